@@ -0,0 +1,52 @@
+package com.github.hippo.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 声明在@HippoService接口的方法上,client端缓存该方法的返回结果,命中时不发起远程调用
+ * 
+ * 适合配置/字典/用户信息这类读多写少的查询;缓存的是同一个对象,调用方不要修改返回结果
+ * 
+ * @author sl
+ *
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface HippoCache {
+  /**
+   * 缓存有效时间(写入后开始计算),默认60000毫秒
+   * 
+   * @return 毫秒
+   */
+  long ttl() default 60000;
+
+  /**
+   * 最大缓存条数,超过后按W-TinyLFU淘汰,默认1000
+   * 
+   * @return 最大条数
+   */
+  int maxEntries() default 1000;
+
+  /**
+   * 缓存结果的总大小上限(按结果序列化成json的字节数估算),大于0时按大小淘汰,maxEntries不再生效;默认0不按大小限制
+   * 
+   * 适合返回结果大小差别很大的方法,估算大小在写缓存时做一次json序列化
+   * 
+   * @return 字节数
+   */
+  long maxWeightBytes() default 0;
+
+  /**
+   * 参与生成缓存key的参数下标(从0开始),默认全部参数
+   * 
+   * 参数需要正确实现equals/hashCode
+   * 
+   * @return 参数下标
+   */
+  int[] keyArgs() default {};
+}
@@ -0,0 +1,44 @@
+package com.github.hippo.cache;
+
+import java.util.Arrays;
+
+/**
+ * 调用key,由方法和参数组成,数组类型的参数按内容比较
+ * 
+ * @author sl
+ *
+ */
+public final class HippoCallKey {
+  private final Object method;
+  private final Object[] values;
+  private final int hash;
+
+  /**
+   * @param method 方法,同一个方法内使用(比如单个方法的缓存)时可以传null
+   * @param values 参数
+   */
+  public HippoCallKey(Object method, Object[] values) {
+    this.method = method;
+    this.values = values == null ? new Object[0] : values;
+    this.hash = 31 * (method == null ? 0 : method.hashCode()) + Arrays.deepHashCode(this.values);
+  }
+
+  @Override
+  public int hashCode() {
+    return hash;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (!(obj instanceof HippoCallKey)) {
+      return false;
+    }
+    HippoCallKey other = (HippoCallKey) obj;
+    return hash == other.hash
+        && (method == null ? other.method == null : method.equals(other.method))
+        && Arrays.deepEquals(values, other.values);
+  }
+}
@@ -0,0 +1,108 @@
+package com.github.hippo.cache;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+import com.alibaba.fastjson.JSON;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.github.hippo.annotation.HippoCache;
+import com.github.hippo.exception.HippoServiceException;
+
+/**
+ * 单个@HippoCache方法的结果缓存
+ * 
+ * 底层是caffeine(W-TinyLFU淘汰,并发,有界),记录命中/未命中统计
+ * 
+ * @author sl
+ *
+ */
+public class HippoResultCache {
+
+  private static final HippoCallKey EMPTY_KEY = new HippoCallKey(null, null);
+
+  private final String name;
+  private final int[] keyArgs;
+  private final Cache<HippoCallKey, Object> cache;
+
+  HippoResultCache(Method method, HippoCache hippoCache) {
+    this.name = method.getDeclaringClass().getName() + "." + method.getName();
+    this.keyArgs = hippoCache.keyArgs();
+    // 下标写错在启动时就失败,不要等到每次调用时数组越界
+    for (int index : keyArgs) {
+      if (index < 0 || index >= method.getParameterCount()) {
+        throw new HippoServiceException("@HippoCache.keyArgs下标[" + index + "]超出方法[" + name
+            + "]的参数个数" + method.getParameterCount());
+      }
+    }
+    Caffeine<Object, Object> builder = Caffeine.newBuilder();
+    if (hippoCache.maxWeightBytes() > 0) {
+      builder.maximumWeight(hippoCache.maxWeightBytes())
+          .weigher((key, value) -> weigh(value));
+    } else {
+      builder.maximumSize(hippoCache.maxEntries());
+    }
+    this.cache = builder.expireAfterWrite(hippoCache.ttl(), TimeUnit.MILLISECONDS).recordStats()
+        .build();
+  }
+
+  /**
+   * 按json序列化后的字节数估算结果大小,序列化失败按1算
+   */
+  private static int weigh(Object value) {
+    try {
+      return Math.max(JSON.toJSONBytes(value).length, 1);
+    } catch (Exception e) {
+      return 1;
+    }
+  }
+
+  /**
+   * 按参数查缓存
+   * 
+   * @param args 方法参数
+   * @return 缓存结果,没有返回null
+   */
+  public Object get(Object[] args) {
+    return cache.getIfPresent(key(args));
+  }
+
+  /**
+   * 写缓存,null结果不缓存
+   * 
+   * @param args 方法参数
+   * @param result 远程调用结果
+   */
+  public void put(Object[] args, Object result) {
+    if (result != null) {
+      cache.put(key(args), result);
+    }
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public CacheStats stats() {
+    return cache.stats();
+  }
+
+  public long size() {
+    return cache.estimatedSize();
+  }
+
+  private HippoCallKey key(Object[] args) {
+    if (args == null || args.length == 0) {
+      return EMPTY_KEY;
+    }
+    if (keyArgs.length == 0) {
+      return new HippoCallKey(null, args.clone());
+    }
+    Object[] values = new Object[keyArgs.length];
+    for (int i = 0; i < keyArgs.length; i++) {
+      values[i] = args[keyArgs[i]];
+    }
+    return new HippoCallKey(null, values);
+  }
+}
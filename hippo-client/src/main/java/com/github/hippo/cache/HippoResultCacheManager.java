@@ -0,0 +1,53 @@
+package com.github.hippo.cache;
+
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.github.hippo.annotation.HippoCache;
+
+/**
+ * 管理所有@HippoCache方法的结果缓存
+ * 
+ * @author sl
+ *
+ */
+public enum HippoResultCacheManager {
+  INSTANCE;
+
+  private final Map<String, HippoResultCache> caches = new ConcurrentHashMap<>();
+
+  /**
+   * 解析接口上所有@HippoCache方法,创建proxy时调用一次
+   * 
+   * @param interfaceClass @HippoService接口
+   * @return method-缓存,没有@HippoCache方法返回空map
+   */
+  public Map<Method, HippoResultCache> register(Class<?> interfaceClass) {
+    Map<Method, HippoResultCache> methodCaches = new HashMap<>();
+    for (Method method : interfaceClass.getMethods()) {
+      HippoCache hippoCache = method.getAnnotation(HippoCache.class);
+      if (hippoCache == null) {
+        continue;
+      }
+      HippoResultCache resultCache = new HippoResultCache(method, hippoCache);
+      HippoResultCache exist = caches.putIfAbsent(method.toGenericString(), resultCache);
+      methodCaches.put(method, exist == null ? resultCache : exist);
+    }
+    return methodCaches.isEmpty() ? Collections.emptyMap() : methodCaches;
+  }
+
+  /**
+   * 每个方法的命中/未命中统计
+   * 
+   * @return 方法签名-统计
+   */
+  public Map<String, CacheStats> getStats() {
+    Map<String, CacheStats> stats = new HashMap<>();
+    caches.forEach((name, cache) -> stats.put(name, cache.stats()));
+    return stats;
+  }
+}
@@ -0,0 +1,395 @@
+package com.github.hippo.client;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * client端连接相关配置,都有默认值,可以在*.properties里覆盖
+ * 
+ * @author sl
+ *
+ */
+@Component
+public class HippoClientConfig {
+
+  /**
+   * 是否开启批量发送,开启后同一连接上的请求会攒成一个批量帧发送
+   */
+  @Value("${hippo.client.batch.enabled:false}")
+  private boolean batchEnabled;
+
+  /**
+   * 一个批量帧最多带多少个请求
+   */
+  @Value("${hippo.client.batch.maxSize:16}")
+  private int batchMaxSize;
+
+  /**
+   * 第一个请求进来后最多等多少微秒就发送
+   */
+  @Value("${hippo.client.batch.maxDelayMicros:200}")
+  private long batchMaxDelayMicros;
+
+  /**
+   * 是否在启动时预热连接
+   */
+  @Value("${hippo.client.warmup.enabled:true}")
+  private boolean warmupEnabled;
+
+  /**
+   * 预热时每个服务至少要建好的连接数,服务端实例不够时以实例数为准
+   */
+  @Value("${hippo.client.warmup.minConnections:1}")
+  private int warmupMinConnections;
+
+  /**
+   * 预热最多等待的毫秒数,超时后不再阻塞启动和调用
+   * 
+   * 预热在ContextRefreshedEvent里同步执行,容器启动(refresh)最多会因此多等这么久
+   */
+  @Value("${hippo.client.warmup.timeoutMillis:10000}")
+  private long warmupTimeoutMillis;
+
+  /**
+   * 预热时查注册中心和发起连接的线程数,预热结束后线程退出
+   */
+  @Value("${hippo.client.warmup.threads:4}")
+  private int warmupThreads;
+
+  /**
+   * 断线重连的初始等待毫秒数,之后每次翻倍
+   */
+  @Value("${hippo.client.reconnect.baseDelayMillis:100}")
+  private long reconnectBaseDelayMillis;
+
+  /**
+   * 断线重连的最大等待毫秒数
+   */
+  @Value("${hippo.client.reconnect.maxDelayMillis:15000}")
+  private long reconnectMaxDelayMillis;
+
+  /**
+   * 新连上的服务端在多少毫秒内逐步加到满权重,0表示关闭;服务端在元数据里给了预热时长时以服务端为准
+   */
+  @Value("${hippo.client.slowStart.windowMillis:30000}")
+  private long slowStartWindowMillis;
+
+  /**
+   * 预热期间的最小权重(0~1)
+   */
+  @Value("${hippo.client.slowStart.minWeight:0.1}")
+  private double slowStartMinWeight;
+
+  /**
+   * 是否开启异常endpoint摘除
+   */
+  @Value("${hippo.client.outlier.enabled:true}")
+  private boolean outlierEnabled;
+
+  /**
+   * 统计周期毫秒数,每个周期按错误率和延迟检查一次
+   */
+  @Value("${hippo.client.outlier.intervalMillis:10000}")
+  private long outlierIntervalMillis;
+
+  /**
+   * 连续失败(超时/连接失败)多少次立即摘除
+   */
+  @Value("${hippo.client.outlier.consecutiveFailures:5}")
+  private int outlierConsecutiveFailures;
+
+  /**
+   * 一个统计周期内错误率超过多少摘除
+   */
+  @Value("${hippo.client.outlier.maxErrorRatio:0.5}")
+  private double outlierMaxErrorRatio;
+
+  /**
+   * EWMA延迟超过同服务中位数的多少倍摘除
+   */
+  @Value("${hippo.client.outlier.latencyFactor:3.0}")
+  private double outlierLatencyFactor;
+
+  /**
+   * 一个统计周期内请求数达到多少才按错误率/延迟判断
+   */
+  @Value("${hippo.client.outlier.minRequests:20}")
+  private long outlierMinRequests;
+
+  /**
+   * 第一次摘除的毫秒数,之后每次翻倍
+   */
+  @Value("${hippo.client.outlier.baseEjectionMillis:30000}")
+  private long outlierBaseEjectionMillis;
+
+  /**
+   * 最长摘除毫秒数
+   */
+  @Value("${hippo.client.outlier.maxEjectionMillis:300000}")
+  private long outlierMaxEjectionMillis;
+
+  /**
+   * 同一服务最多摘除百分之多少的endpoint
+   */
+  @Value("${hippo.client.outlier.maxEjectionPercent:50}")
+  private int outlierMaxEjectionPercent;
+
+  /**
+   * 是否优先选择同机/同zone的服务端
+   */
+  @Value("${hippo.client.locality.enabled:true}")
+  private boolean localityEnabled;
+
+  /**
+   * 客户端所在的可用区,不填则不区分zone
+   */
+  @Value("${hippo.client.zone:}")
+  private String zone;
+
+  /**
+   * 客户端所在主机标识,不填默认hostname
+   */
+  @Value("${hippo.client.hostId:}")
+  private String hostId;
+
+  /**
+   * 本地(同机/同zone)可用endpoint占比低于多少时溢出到下一级
+   */
+  @Value("${hippo.client.locality.minHealthyPercent:70}")
+  private int localityMinHealthyPercent;
+
+  /**
+   * 本地每个endpoint处理中的请求都达到多少时溢出到下一级,0表示不按负载溢出
+   */
+  @Value("${hippo.client.locality.maxInFlight:0}")
+  private int localityMaxInFlight;
+
+  /**
+   * 连接多少毫秒没有读到数据就发一次心跳ping,一直读不到时每隔这么久发一次
+   */
+  @Value("${hippo.client.heartbeat.intervalMillis:30000}")
+  private long heartbeatIntervalMillis;
+
+  /**
+   * 连接多少毫秒没有收到任何数据(包括pong)就关闭重连,0表示不检查.
+   * 要求服务端会回pong,服务端和客户端要一起升级
+   */
+  @Value("${hippo.client.heartbeat.timeoutMillis:90000}")
+  private long heartbeatTimeoutMillis;
+
+  public boolean isBatchEnabled() {
+    return batchEnabled;
+  }
+
+  public void setBatchEnabled(boolean batchEnabled) {
+    this.batchEnabled = batchEnabled;
+  }
+
+  public int getBatchMaxSize() {
+    return batchMaxSize;
+  }
+
+  public void setBatchMaxSize(int batchMaxSize) {
+    this.batchMaxSize = batchMaxSize;
+  }
+
+  public long getBatchMaxDelayMicros() {
+    return batchMaxDelayMicros;
+  }
+
+  public void setBatchMaxDelayMicros(long batchMaxDelayMicros) {
+    this.batchMaxDelayMicros = batchMaxDelayMicros;
+  }
+
+  public boolean isWarmupEnabled() {
+    return warmupEnabled;
+  }
+
+  public void setWarmupEnabled(boolean warmupEnabled) {
+    this.warmupEnabled = warmupEnabled;
+  }
+
+  public int getWarmupMinConnections() {
+    return warmupMinConnections;
+  }
+
+  public void setWarmupMinConnections(int warmupMinConnections) {
+    this.warmupMinConnections = warmupMinConnections;
+  }
+
+  public long getWarmupTimeoutMillis() {
+    return warmupTimeoutMillis;
+  }
+
+  public void setWarmupTimeoutMillis(long warmupTimeoutMillis) {
+    this.warmupTimeoutMillis = warmupTimeoutMillis;
+  }
+
+  public int getWarmupThreads() {
+    return warmupThreads;
+  }
+
+  public void setWarmupThreads(int warmupThreads) {
+    this.warmupThreads = warmupThreads;
+  }
+
+  public long getReconnectBaseDelayMillis() {
+    return reconnectBaseDelayMillis;
+  }
+
+  public void setReconnectBaseDelayMillis(long reconnectBaseDelayMillis) {
+    this.reconnectBaseDelayMillis = reconnectBaseDelayMillis;
+  }
+
+  public long getReconnectMaxDelayMillis() {
+    return reconnectMaxDelayMillis;
+  }
+
+  public void setReconnectMaxDelayMillis(long reconnectMaxDelayMillis) {
+    this.reconnectMaxDelayMillis = reconnectMaxDelayMillis;
+  }
+
+  public long getSlowStartWindowMillis() {
+    return slowStartWindowMillis;
+  }
+
+  public void setSlowStartWindowMillis(long slowStartWindowMillis) {
+    this.slowStartWindowMillis = slowStartWindowMillis;
+  }
+
+  public double getSlowStartMinWeight() {
+    return slowStartMinWeight;
+  }
+
+  public void setSlowStartMinWeight(double slowStartMinWeight) {
+    this.slowStartMinWeight = slowStartMinWeight;
+  }
+
+  public boolean isOutlierEnabled() {
+    return outlierEnabled;
+  }
+
+  public void setOutlierEnabled(boolean outlierEnabled) {
+    this.outlierEnabled = outlierEnabled;
+  }
+
+  public long getOutlierIntervalMillis() {
+    return outlierIntervalMillis;
+  }
+
+  public void setOutlierIntervalMillis(long outlierIntervalMillis) {
+    this.outlierIntervalMillis = outlierIntervalMillis;
+  }
+
+  public int getOutlierConsecutiveFailures() {
+    return outlierConsecutiveFailures;
+  }
+
+  public void setOutlierConsecutiveFailures(int outlierConsecutiveFailures) {
+    this.outlierConsecutiveFailures = outlierConsecutiveFailures;
+  }
+
+  public double getOutlierMaxErrorRatio() {
+    return outlierMaxErrorRatio;
+  }
+
+  public void setOutlierMaxErrorRatio(double outlierMaxErrorRatio) {
+    this.outlierMaxErrorRatio = outlierMaxErrorRatio;
+  }
+
+  public double getOutlierLatencyFactor() {
+    return outlierLatencyFactor;
+  }
+
+  public void setOutlierLatencyFactor(double outlierLatencyFactor) {
+    this.outlierLatencyFactor = outlierLatencyFactor;
+  }
+
+  public long getOutlierMinRequests() {
+    return outlierMinRequests;
+  }
+
+  public void setOutlierMinRequests(long outlierMinRequests) {
+    this.outlierMinRequests = outlierMinRequests;
+  }
+
+  public long getOutlierBaseEjectionMillis() {
+    return outlierBaseEjectionMillis;
+  }
+
+  public void setOutlierBaseEjectionMillis(long outlierBaseEjectionMillis) {
+    this.outlierBaseEjectionMillis = outlierBaseEjectionMillis;
+  }
+
+  public long getOutlierMaxEjectionMillis() {
+    return outlierMaxEjectionMillis;
+  }
+
+  public void setOutlierMaxEjectionMillis(long outlierMaxEjectionMillis) {
+    this.outlierMaxEjectionMillis = outlierMaxEjectionMillis;
+  }
+
+  public int getOutlierMaxEjectionPercent() {
+    return outlierMaxEjectionPercent;
+  }
+
+  public void setOutlierMaxEjectionPercent(int outlierMaxEjectionPercent) {
+    this.outlierMaxEjectionPercent = outlierMaxEjectionPercent;
+  }
+
+  public boolean isLocalityEnabled() {
+    return localityEnabled;
+  }
+
+  public void setLocalityEnabled(boolean localityEnabled) {
+    this.localityEnabled = localityEnabled;
+  }
+
+  public String getZone() {
+    return zone;
+  }
+
+  public void setZone(String zone) {
+    this.zone = zone;
+  }
+
+  public String getHostId() {
+    return hostId;
+  }
+
+  public void setHostId(String hostId) {
+    this.hostId = hostId;
+  }
+
+  public int getLocalityMinHealthyPercent() {
+    return localityMinHealthyPercent;
+  }
+
+  public void setLocalityMinHealthyPercent(int localityMinHealthyPercent) {
+    this.localityMinHealthyPercent = localityMinHealthyPercent;
+  }
+
+  public int getLocalityMaxInFlight() {
+    return localityMaxInFlight;
+  }
+
+  public void setLocalityMaxInFlight(int localityMaxInFlight) {
+    this.localityMaxInFlight = localityMaxInFlight;
+  }
+
+  public long getHeartbeatIntervalMillis() {
+    return heartbeatIntervalMillis;
+  }
+
+  public void setHeartbeatIntervalMillis(long heartbeatIntervalMillis) {
+    this.heartbeatIntervalMillis = heartbeatIntervalMillis;
+  }
+
+  public long getHeartbeatTimeoutMillis() {
+    return heartbeatTimeoutMillis;
+  }
+
+  public void setHeartbeatTimeoutMillis(long heartbeatTimeoutMillis) {
+    this.heartbeatTimeoutMillis = heartbeatTimeoutMillis;
+  }
+}
@@ -1,15 +1,17 @@
 package com.github.hippo.client;
 
 import java.lang.reflect.Field;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
@@ -17,13 +19,14 @@ import org.slf4j.LoggerFactory;
 import org.springframework.aop.support.AopUtils;
 import org.springframework.beans.BeansException;
 import org.springframework.beans.factory.BeanCreationException;
-import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.config.BeanPostProcessor;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationContextAware;
+import org.springframework.context.ApplicationListener;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.event.ContextRefreshedEvent;
 import org.springframework.core.annotation.Order;
 import org.springframework.util.CollectionUtils;
 
@@ -32,6 +35,8 @@ import com.github.hippo.annotation.HippoService;
 import com.github.hippo.govern.ServiceGovern;
 import com.github.hippo.netty.HippoClientBootstrap;
 import com.github.hippo.netty.HippoClientBootstrapMap;
+import com.github.hippo.netty.HippoLocalityPolicy;
+import com.github.hippo.netty.HippoOutlierDetector;
 
 /**
  * 初始化有@RpcConsumer注解的类
@@ -41,7 +46,8 @@ import com.github.hippo.netty.HippoClientBootstrapMap;
  */
 @Configuration
 @Order(1)
-public class HippoClientInit implements ApplicationContextAware, InitializingBean {
+public class HippoClientInit
+    implements ApplicationContextAware, ApplicationListener<ContextRefreshedEvent> {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(HippoClientInit.class);
 
@@ -54,8 +60,13 @@ public class HippoClientInit implements ApplicationContextAware, InitializingBea
   @Autowired
   private ServiceGovern serviceGovern;
 
+  @Autowired
+  private HippoClientConfig hippoClientConfig;
+
   private Set<String> serviceNames = new HashSet<>();
 
+  private AtomicBoolean started = new AtomicBoolean(false);
+
 
 
   @Override
@@ -108,15 +119,49 @@ public class HippoClientInit implements ApplicationContextAware, InitializingBea
     return applicationContext;
   }
 
+  /**
+   * 所有bean初始化完(serviceNames已经收集完)后先预热连接,再开始定时维护连接
+   */
   @Override
-  public void afterPropertiesSet() throws Exception {
+  public void onApplicationEvent(ContextRefreshedEvent event) {
+    // 父子容器会触发多次,只处理一次
+    if (!started.compareAndSet(false, true)) {
+      return;
+    }
+    HippoLocalityPolicy.INSTANCE.configure(hippoClientConfig);
+    HippoOutlierDetector.INSTANCE.start(hippoClientConfig);
+    // 注册中心推送的增量直接生效,定时任务只做兜底
+    serviceGovern.subscribe(this::onServiceAddressChange);
+    if (hippoClientConfig.isWarmupEnabled()) {
+      new HippoClientWarmup(serviceGovern, hippoClientConfig).warmup(serviceNames);
+    }
     ScheduledExecutorService newScheduledThreadPool = Executors.newScheduledThreadPool(1);
     newScheduledThreadPool.scheduleAtFixedRate(() -> {
       if (CollectionUtils.isEmpty(serviceNames)) {
         return;
       }
       serviceNames.forEach(this::conntectionProcess);
-    }, 120, 15, TimeUnit.SECONDS);
+    }, 15, 15, TimeUnit.SECONDS);
+  }
+
+  private void onServiceAddressChange(String serviceName, List<String> added,
+      List<String> removed) {
+    if (!serviceNames.contains(serviceName)) {
+      return;
+    }
+    for (String serviceAddress : removed) {
+      String[] split = serviceAddress.split(":");
+      HippoClientBootstrapMap.remove(serviceName, split[0], Integer.parseInt(split[1]));
+    }
+    for (String serviceAddress : added) {
+      String[] split = serviceAddress.split(":");
+      String host = split[0];
+      int port = Integer.parseInt(split[1]);
+      if (StringUtils.isBlank(host) || port <= 0 || port > 65532) {
+        continue;
+      }
+      createHippoHandler(serviceName, host, port, serviceGovern, hippoClientConfig);
+    }
   }
 
   private void conntectionProcess(String serviceName) {
@@ -133,12 +178,9 @@ public class HippoClientInit implements ApplicationContextAware, InitializingBea
 
     Map<String, HippoClientBootstrap> map = HippoClientBootstrapMap.get(serviceName);
     if (map != null && !map.isEmpty()) {
-      Iterator<HippoClientBootstrap> iterator = map.values().iterator();
-      while (iterator.hasNext()) {
-        HippoClientBootstrap next = iterator.next();
-        String key = next.getHost() + ":" + next.getPort();
-        if (!serviceAddresses.contains(key)) {
-          map.remove(key).shutdown();
+      for (HippoClientBootstrap next : map.values()) {
+        if (!serviceAddresses.contains(next.getHost() + ":" + next.getPort())) {
+          HippoClientBootstrapMap.remove(serviceName, next.getHost(), next.getPort());
         }
       }
     }
@@ -151,28 +193,36 @@ public class HippoClientInit implements ApplicationContextAware, InitializingBea
         LOGGER.warn("[%s]服务参数异常.host=%s,port=%s", serviceName, host, port);
         continue;
       }
-      createHippoHandler(serviceName, host, port);
+      createHippoHandler(serviceName, host, port, serviceGovern, hippoClientConfig);
 
     }
   }
 
-  static void createHippoHandler(String serviceName, String host, int port) {
-    synchronized (HippoClientInit.class) {
-      if (checkServiceExist(serviceName, host, port)) {
-        return;
-      }
-      try {
-        HippoClientBootstrap bootstrap = new HippoClientBootstrap(serviceName, host, port);
-        HippoClientBootstrapMap.put(serviceName, host, port, bootstrap);
-      } catch (Exception e) {
-        LOGGER.error(e.getMessage(), e);
-      }
-    }
-
+  /**
+   * 非阻塞地建立连接,不同endpoint并行建连,同一个endpoint只会有一个连接在建立
+   * 
+   * @return 连接future
+   */
+  static CompletableFuture<HippoClientBootstrap> createHippoHandler(String serviceName,
+      String host, int port, ServiceGovern serviceGovern, HippoClientConfig hippoClientConfig) {
+    return HippoClientBootstrapMap
+        .connect(serviceName, host, port, hippoClientConfig,
+            getServiceMetadata(serviceGovern, serviceName, host + ":" + port))
+        .whenComplete((bootstrap, e) -> {
+          if (e != null) {
+            LOGGER.error(e.getMessage(), e);
+          }
+        });
   }
 
-  private static boolean checkServiceExist(String serviceName, String host, int port) {
-    return HippoClientBootstrapMap.containsSubKey(serviceName, host + ":" + port);
+  static Map<String, String> getServiceMetadata(ServiceGovern serviceGovern, String serviceName,
+      String serviceAddress) {
+    try {
+      return serviceGovern.getServiceMetadata(serviceName, serviceAddress);
+    } catch (Exception e) {
+      LOGGER.warn("getServiceMetadata error:[" + serviceName + "]" + serviceAddress, e);
+      return Collections.emptyMap();
+    }
   }
 
 }
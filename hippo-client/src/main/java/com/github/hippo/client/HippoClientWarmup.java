@@ -0,0 +1,175 @@
+package com.github.hippo.client;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.CollectionUtils;
+
+import com.github.hippo.govern.ServiceGovern;
+import com.github.hippo.netty.HippoClientBootstrapMap;
+
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+/**
+ * 启动预热:并行获取所有@HippoClient服务的地址,非阻塞地连上每一个服务端
+ * 
+ * 预热期间进来的调用会先等待,直到每个服务至少有minConnections个连接(或预热超时)
+ * 
+ * 查注册中心会阻塞,所以在单独的warmup线程池里做,不占用commonPool;调用warmup的线程最多等待warmupTimeoutMillis
+ * 
+ * @author sl
+ *
+ */
+final class HippoClientWarmup {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(HippoClientWarmup.class);
+
+  // 不为null说明正在预热
+  private static volatile CountDownLatch gate;
+
+  private final ServiceGovern serviceGovern;
+  private final HippoClientConfig hippoClientConfig;
+
+  HippoClientWarmup(ServiceGovern serviceGovern, HippoClientConfig hippoClientConfig) {
+    this.serviceGovern = serviceGovern;
+    this.hippoClientConfig = hippoClientConfig;
+  }
+
+  /**
+   * 预热期间等待就绪,没有在预热直接返回
+   * 
+   * @param timeout 最多等待的毫秒数
+   * @throws InterruptedException InterruptedException
+   */
+  static void awaitReady(long timeout) throws InterruptedException {
+    CountDownLatch current = gate;
+    if (current != null) {
+      current.await(timeout <= 0 ? 60000 : timeout, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /**
+   * 阻塞直到所有服务就绪或者超时
+   * 
+   * @param serviceNames 需要预热的服务
+   */
+  void warmup(Set<String> serviceNames) {
+    if (CollectionUtils.isEmpty(serviceNames)) {
+      return;
+    }
+    long start = System.currentTimeMillis();
+    CountDownLatch ready = new CountDownLatch(serviceNames.size());
+    gate = ready;
+    int threads = Math.max(1, Math.min(hippoClientConfig.getWarmupThreads(), serviceNames.size()));
+    ExecutorService executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+        new LinkedBlockingQueue<>(), new DefaultThreadFactory("hippo-client-warmup", true));
+    try {
+      for (String serviceName : serviceNames) {
+        executor.execute(() -> warmupService(serviceName, ready));
+      }
+      if (!ready.await(hippoClientConfig.getWarmupTimeoutMillis(), TimeUnit.MILLISECONDS)) {
+        LOGGER.warn("hippo client预热超时,还有{}个服务没有就绪,耗时:{}毫秒", ready.getCount(),
+            System.currentTimeMillis() - start);
+      } else {
+        LOGGER.info("hippo client预热完成{},耗时:{}毫秒", serviceNames,
+            System.currentTimeMillis() - start);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      // 超时后还没查完的服务在后台继续,查完线程就退出
+      executor.shutdown();
+      gate = null;
+      // 放行所有还在等待的调用
+      while (ready.getCount() > 0) {
+        ready.countDown();
+      }
+    }
+  }
+
+  /**
+   * 服务就绪(连上warmupMinConnections个endpoint或者所有endpoint都试过)时ready减一,每个服务只减一次
+   */
+  private void warmupService(String serviceName, CountDownLatch ready) {
+    AtomicBoolean done = new AtomicBoolean(false);
+    Runnable release = () -> {
+      if (done.compareAndSet(false, true)) {
+        ready.countDown();
+      }
+    };
+    // 所有地址都交给了连接回调之后由回调负责ready,在这之前出任何问题都由finally放行
+    boolean dispatched = false;
+    try {
+      List<String> serviceAddresses = serviceGovern.getServiceAddresses(serviceName);
+      if (CollectionUtils.isEmpty(serviceAddresses)) {
+        return;
+      }
+      int min = Math.min(hippoClientConfig.getWarmupMinConnections(), serviceAddresses.size());
+      AtomicInteger connected = new AtomicInteger(0);
+      AtomicInteger pending = new AtomicInteger(serviceAddresses.size());
+      Runnable check = () -> {
+        if (connected.get() >= min || pending.get() == 0) {
+          release.run();
+        }
+      };
+      for (String serviceAddress : serviceAddresses) {
+        try {
+          connect(serviceName, serviceAddress, connected, pending, check);
+        } catch (Exception e) {
+          LOGGER.warn("warmup connect error:[" + serviceName + "]" + serviceAddress, e);
+          pending.decrementAndGet();
+          check.run();
+        }
+      }
+      dispatched = true;
+    } catch (Exception e) {
+      LOGGER.error("warmup error:[" + serviceName + "]", e);
+    } finally {
+      if (!dispatched) {
+        release.run();
+      }
+    }
+  }
+
+  private void connect(String serviceName, String serviceAddress, AtomicInteger connected,
+      AtomicInteger pending, Runnable check) {
+    if (HippoClientBootstrapMap.containsSubKey(serviceName, serviceAddress)) {
+      connected.incrementAndGet();
+      pending.decrementAndGet();
+      check.run();
+      return;
+    }
+    String[] split = serviceAddress.split(":");
+    String host = split[0];
+    int port = split.length == 2 ? NumberUtils.toInt(split[1]) : 0;
+    if (StringUtils.isBlank(host) || port <= 0 || port > 65532) {
+      LOGGER.warn("warmup跳过不合法的地址:[{}]{}", serviceName, serviceAddress);
+      pending.decrementAndGet();
+      check.run();
+      return;
+    }
+    HippoClientBootstrapMap
+        .connect(serviceName, host, port, hippoClientConfig,
+            HippoClientInit.getServiceMetadata(serviceGovern, serviceName, serviceAddress))
+        .whenComplete((bootstrap, e) -> {
+          if (e == null) {
+            connected.incrementAndGet();
+          } else {
+            LOGGER.warn("warmup connect error:[" + serviceName + "]" + serviceAddress, e);
+          }
+          pending.decrementAndGet();
+          check.run();
+        });
+  }
+}
@@ -1,9 +1,15 @@
 package com.github.hippo.client;
 
+import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
-import java.util.UUID;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
@@ -11,10 +17,15 @@ import com.github.hippo.annotation.HippoClient;
 import com.github.hippo.annotation.HippoService;
 import com.github.hippo.bean.HippoRequest;
 import com.github.hippo.bean.HippoResponse;
+import com.github.hippo.cache.HippoCallKey;
+import com.github.hippo.cache.HippoResultCache;
+import com.github.hippo.cache.HippoResultCacheManager;
 import com.github.hippo.callback.CallTypeHelper;
 import com.github.hippo.callback.ICallBackBean;
 import com.github.hippo.chain.ChainThreadLocal;
+import com.github.hippo.enums.HippoPriorityEnum;
 import com.github.hippo.enums.HippoRequestEnum;
+import com.github.hippo.exception.HippoReadTimeoutException;
 import com.github.hippo.govern.ServiceGovern;
 import com.github.hippo.hystrix.HippoCommand;
 import com.github.hippo.netty.HippoClientBootstrapMap;
@@ -27,55 +38,112 @@ import com.github.hippo.netty.HippoClientBootstrapMap;
 @Component
 public class HippoProxy {
 
+  private static final Logger LOGGER = LoggerFactory.getLogger(HippoProxy.class);
+
   @Autowired
   private ServiceGovern serviceGovern;
 
+  @Autowired
+  private HippoClientConfig hippoClientConfig;
+
   @SuppressWarnings("unchecked")
   <T> T create(Class<?> inferfaceClass, HippoClient hippoClient) {
+    Map<Method, HippoResultCache> resultCaches =
+        HippoResultCacheManager.INSTANCE.register(inferfaceClass);
     return (T) Proxy.newProxyInstance(inferfaceClass.getClassLoader(),
         new Class<?>[] {inferfaceClass}, (proxy, method, args) -> {
-          HippoRequest request = new HippoRequest();
-          request.setRequestId(UUID.randomUUID().toString());
-          request.setChainId(ChainThreadLocal.INSTANCE.getChainId());
-          request.setChainOrder(ChainThreadLocal.INSTANCE.getChainOrder());
-          request.setRequestType(HippoRequestEnum.RPC.getType());
-          request.setClassName(method.getDeclaringClass().getName());
-          request.setMethodName(method.getName());
-          request.setParameterTypes(method.getParameterTypes());
-          request.setParameters(args);
-          String serviceName = inferfaceClass.getAnnotation(HippoService.class).serviceName();
-          request.setServiceName(serviceName);
-          ICallBackBean callBack = CallTypeHelper.SETTING.get();
-          if (callBack != null) {
-            request.setiCallBack(callBack.getiCallBack());
-            request.setCallType(callBack.getCallType());
+          // 只有同步调用走缓存和合并,oneway/async直接调用
+          if (CallTypeHelper.SETTING.get() != null) {
+            return invoke(inferfaceClass, hippoClient, method, args);
           }
-          ChainThreadLocal.INSTANCE.clearTL();
-          HippoCommand hippoCommand =
-              new HippoCommand(request, hippoClient.timeout(), hippoClient.retryTimes(),
-                  hippoClient.isCircuitBreaker(), hippoClient.semaphoreMaxConcurrentRequests(),
-                  hippoClient.downgradeStrategy(), hippoClient.fallbackEnabled());
-          HippoResponse hippoResponse;
-          // 由于长连接是由定时器线程去持续获得,那如果是junit或者有些请求已经到来也需要获取连接来处理数据
-          if (HippoClientBootstrapMap.get(serviceName) == null
-              || HippoClientBootstrapMap.get(serviceName).isEmpty()) {
-            conntectionOne(serviceName);
+          HippoResultCache resultCache = resultCaches.get(method);
+          Object result = resultCache == null ? null : resultCache.get(args);
+          if (result != null) {
+            return result;
           }
-          if (hippoClient.isUseHystrix() || hippoClient.isCircuitBreaker()) {
-            hippoResponse = (HippoResponse) hippoCommand.execute();
+          if (hippoClient.isCoalescing()) {
+            result = HippoSingleFlight.INSTANCE.call(new HippoCallKey(method, args),
+                ChainThreadLocal.INSTANCE.remainingTimeout(hippoClient.timeout()),
+                () -> invoke(inferfaceClass, hippoClient, method, args));
           } else {
-            hippoResponse = hippoCommand.getHippoResponse(request, hippoClient.timeout(),
-                hippoClient.retryTimes());
+            result = invoke(inferfaceClass, hippoClient, method, args);
           }
-          if (hippoResponse.isError()) {
-            throw hippoResponse.getThrowable();
-          } else {
-            return hippoResponse.getResult();
+          if (resultCache != null) {
+            resultCache.put(args, result);
           }
+          return result;
         });
   }
 
-  private void conntectionOne(String serviceName) throws Exception {
+  private Object invoke(Class<?> inferfaceClass, HippoClient hippoClient, Method method,
+      Object[] args) throws Throwable {
+    HippoRequest request = new HippoRequest();
+    request.setChainIdHigh(ChainThreadLocal.INSTANCE.getChainIdHigh());
+    request.setChainIdLow(ChainThreadLocal.INSTANCE.getChainIdLow());
+    request.setChainOrder(ChainThreadLocal.INSTANCE.getChainOrder());
+    request.setRequestType(HippoRequestEnum.RPC.getType());
+    request.setClassName(method.getDeclaringClass().getName());
+    request.setMethodName(method.getName());
+    request.setParameterTypes(method.getParameterTypes());
+    request.setParameters(args);
+    request.setPriority(resolvePriority(hippoClient.priority()).getPriority());
+    String serviceName = inferfaceClass.getAnnotation(HippoService.class).serviceName();
+    request.setServiceName(serviceName);
+    ICallBackBean callBack = CallTypeHelper.SETTING.get();
+    if (callBack != null) {
+      request.setiCallBack(callBack.getiCallBack());
+      request.setCallType(callBack.getCallType());
+    }
+    // 在服务端处理请求期间发起的调用,超时时间不超过上游剩下的时间
+    int timeout = remainingTimeout(request, hippoClient.timeout());
+    ChainThreadLocal.INSTANCE.clearChain();
+    HippoClientWarmup.awaitReady(timeout);
+    HippoCommand hippoCommand =
+        new HippoCommand(request, timeout, hippoClient.retryTimes(),
+            hippoClient.isCircuitBreaker(), hippoClient.semaphoreMaxConcurrentRequests(),
+            hippoClient.downgradeStrategy(), hippoClient.fallbackEnabled());
+    HippoResponse hippoResponse;
+    // 由于长连接是由定时器线程去持续获得,那如果是junit或者有些请求已经到来也需要获取连接来处理数据
+    if (HippoClientBootstrapMap.get(serviceName) == null
+        || HippoClientBootstrapMap.get(serviceName).isEmpty()) {
+      conntectionOne(serviceName, timeout);
+    }
+    if (hippoClient.isUseHystrix() || hippoClient.isCircuitBreaker()) {
+      hippoResponse = (HippoResponse) hippoCommand.execute();
+    } else {
+      hippoResponse = hippoCommand.getHippoResponse(request, timeout, hippoClient.retryTimes());
+    }
+    if (hippoResponse.isError()) {
+      throw hippoResponse.getThrowable();
+    } else {
+      return hippoResponse.getResult();
+    }
+  }
+
+  /**
+   * 有上游deadline时取配置的超时时间和剩余时间中小的那个,deadline已经过了直接超时,不再发请求
+   */
+  private static int remainingTimeout(HippoRequest request, int timeout) {
+    int remaining = ChainThreadLocal.INSTANCE.remainingTimeout(timeout);
+    if (ChainThreadLocal.INSTANCE.isDeadlineExceeded()) {
+      throw new HippoReadTimeoutException("[" + request.getServiceName() + "]"
+          + request.getClassName() + "." + request.getMethodName() + "上游deadline已过,不再调用");
+    }
+    return remaining;
+  }
+
+  /**
+   * 线程上的优先级(HippoPriorityScope或者上游请求的优先级)优先于配置的优先级
+   */
+  private static HippoPriorityEnum resolvePriority(HippoPriorityEnum declared) {
+    HippoPriorityEnum current = ChainThreadLocal.INSTANCE.getPriority();
+    return current != null ? current : declared;
+  }
+
+  /**
+   * 等待一个连接建立,并发进来的调用共享同一次建连
+   */
+  private void conntectionOne(String serviceName, int timeout) throws Exception {
     String serviceAddresse = serviceGovern.getServiceAddress(serviceName);
     if (StringUtils.isBlank(serviceAddresse)) {
       return;
@@ -86,7 +154,13 @@ public class HippoProxy {
     if (StringUtils.isBlank(host) || port <= 0 || port > 65532) {
       return;
     }
-    HippoClientInit.createHippoHandler(serviceName, host, port);
+    try {
+      HippoClientInit.createHippoHandler(serviceName, host, port, serviceGovern, hippoClientConfig)
+          .get(timeout <= 0 ? 60000 : timeout, TimeUnit.MILLISECONDS);
+    } catch (ExecutionException | TimeoutException e) {
+      // 连不上交给HippoCommand按服务不可用处理
+      LOGGER.warn("conntectionOne error:[" + serviceName + "]" + serviceAddresse, e);
+    }
   }
 
 
@@ -97,8 +171,8 @@ public class HippoProxy {
     Object[] objects = new Object[1];
     objects[0] = parameter;
     HippoRequest request = new HippoRequest();
-    request.setRequestId(UUID.randomUUID().toString());
-    request.setChainId(ChainThreadLocal.INSTANCE.getChainId());
+    request.setChainIdHigh(ChainThreadLocal.INSTANCE.getChainIdHigh());
+    request.setChainIdLow(ChainThreadLocal.INSTANCE.getChainIdLow());
     request.setChainOrder(ChainThreadLocal.INSTANCE.getChainOrder());
     request.setRequestType(HippoRequestEnum.API.getType());
     request.setClassName(serviceMethods[0]);
@@ -106,20 +180,23 @@ public class HippoProxy {
     request.setParameterTypes(null);
     request.setParameters(objects);
     request.setServiceName(serviceName);
+    request.setPriority(resolvePriority(HippoPriorityEnum.NORMAL).getPriority());
     ICallBackBean callBack = CallTypeHelper.SETTING.get();
     if (callBack != null) {
       request.setiCallBack(callBack.getiCallBack());
       request.setCallType(callBack.getCallType());
     }
-    ChainThreadLocal.INSTANCE.clearTL();
+    int remaining = remainingTimeout(request, timeout);
+    ChainThreadLocal.INSTANCE.clearChain();
+    HippoClientWarmup.awaitReady(remaining);
 
     // 由于长连接是由定时器线程去持续获得,那如果是junit或者有些请求已经到来也需要获取连接来处理数据
     if (HippoClientBootstrapMap.get(serviceName) == null
         || HippoClientBootstrapMap.get(serviceName).isEmpty()) {
-      conntectionOne(serviceName);
+      conntectionOne(serviceName, remaining);
     }
 
-    HippoCommand hippoCommand = new HippoCommand(request, timeout, retryTimes, isCircuitBreaker,
+    HippoCommand hippoCommand = new HippoCommand(request, remaining, retryTimes, isCircuitBreaker,
         semaphoreMaxConcurrentRequests == 0 ? 10 : semaphoreMaxConcurrentRequests, hippoFailPolicy,
         fallbackEnable);
     HippoResponse hippoResponse = (HippoResponse) hippoCommand.execute();
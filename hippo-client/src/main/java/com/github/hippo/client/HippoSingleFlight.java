@@ -0,0 +1,65 @@
+package com.github.hippo.client;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.github.hippo.cache.HippoCallKey;
+import com.github.hippo.exception.HippoReadTimeoutException;
+
+/**
+ * 合并相同的并发调用(single-flight)
+ * 
+ * 同一个(method,args)有调用正在进行时,后来的调用不再发请求,直接等第一个调用的结果;
+ * 成功或失败都会通知到所有等待的调用方,每个调用方按自己的超时时间等待
+ * 
+ * @author sl
+ *
+ */
+enum HippoSingleFlight {
+  INSTANCE;
+
+  private final ConcurrentHashMap<HippoCallKey, CompletableFuture<Object>> inFlight =
+      new ConcurrentHashMap<>();
+
+  /**
+   * 真正的远程调用
+   */
+  interface Call {
+    Object call() throws Throwable;
+  }
+
+  Object call(HippoCallKey key, int timeout, Call call) throws Throwable {
+    CompletableFuture<Object> future = new CompletableFuture<>();
+    CompletableFuture<Object> exist = inFlight.putIfAbsent(key, future);
+    if (exist != null) {
+      return await(exist, timeout);
+    }
+    Object result;
+    try {
+      result = call.call();
+    } catch (Throwable e) {
+      inFlight.remove(key, future);
+      future.completeExceptionally(e);
+      throw e;
+    }
+    // 先移除再通知,之后进来的调用会重新发请求而不是拿到旧结果
+    inFlight.remove(key, future);
+    future.complete(result);
+    return result;
+  }
+
+  private Object await(CompletableFuture<Object> future, int timeout) throws Throwable {
+    // 和HippoResultCallBack一样,最大1分钟超时
+    int waitTime = timeout <= 0 ? 60000 : timeout;
+    try {
+      return future.get(waitTime, TimeUnit.MILLISECONDS);
+    } catch (ExecutionException e) {
+      throw e.getCause();
+    } catch (TimeoutException e) {
+      throw new HippoReadTimeoutException("合并调用等待超时,超时时间[" + waitTime + "]毫秒", e);
+    }
+  }
+}
@@ -1,5 +1,9 @@
 package com.github.hippo.hystrix;
 
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
 import com.github.hippo.bean.HippoRequest;
 import com.github.hippo.bean.HippoResponse;
 import com.github.hippo.callback.CallTypeHandler;
@@ -7,6 +11,7 @@ import com.github.hippo.callback.RemoteCallHandler;
 import com.github.hippo.client.HippoClientInit;
 import com.github.hippo.exception.HippoReadTimeoutException;
 import com.github.hippo.exception.HippoRequestTypeNotExistException;
+import com.github.hippo.exception.HippoServerBusyException;
 import com.github.hippo.exception.HippoServiceUnavailableException;
 import com.github.hippo.netty.HippoClientBootstrap;
 import com.github.hippo.netty.HippoClientBootstrapMap;
@@ -95,23 +100,61 @@ public class HippoCommand extends HystrixCommand<Object> {
     return hippoFailPolicy.failCallBack(hippoResponse);
   }
 
+  /**
+   * 超时按retryTimes重试;服务端返回server busy时换一个没试过的endpoint重试,不占用retryTimes,
+   * 所有endpoint都busy就返回最后一个busy响应.busy不抛异常,不会触发熔断
+   * 
+   * timeout是所有重试加起来的时间:每次只等(并传给服务端)剩下的时间,用完了就不再重试
+   */
   public HippoResponse getHippoResponse(HippoRequest request, int timeout, int retryTimes)
       throws Exception {
-    HippoResponse result = getResult(request, timeout);
-    if (result.isError() && result.getThrowable() instanceof HippoReadTimeoutException
-        && retryTimes > 0) {
-      return getHippoResponse(request, timeout, retryTimes - 1);
+    int remainingRetries = retryTimes;
+    Set<HippoClientBootstrap> busyEndpoints = null;
+    HippoResponse busyResponse = null;
+    // 小于等于0表示不限制总时间,每次都用默认超时
+    long deadlineNanos =
+        timeout > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout) : 0;
+    int attemptTimeout = timeout;
+    while (true) {
+      HippoClientBootstrap hippoClientBootstrap =
+          HippoClientBootstrapMap.getBootstrap(request.getServiceName(), busyEndpoints);
+      if (hippoClientBootstrap == null) {
+        if (busyResponse != null) {
+          return busyResponse;
+        }
+        throw new HippoServiceUnavailableException("[" + request.getServiceName() + "]没有可用的服务");
+      }
+      HippoResponse result = getResult(hippoClientBootstrap, request, attemptTimeout);
+      boolean busy = result.isError() && result.getThrowable() instanceof HippoServerBusyException;
+      boolean retryTimeout = !busy && result.isError()
+          && result.getThrowable() instanceof HippoReadTimeoutException && remainingRetries > 0;
+      if (!busy && !retryTimeout) {
+        return result;
+      }
+      if (deadlineNanos != 0) {
+        attemptTimeout = remainingMillis(deadlineNanos);
+        if (attemptTimeout <= 0) {
+          return result;
+        }
+      }
+      if (busy) {
+        if (busyEndpoints == null) {
+          busyEndpoints = new HashSet<>();
+        }
+        busyEndpoints.add(hippoClientBootstrap);
+        busyResponse = result;
+      } else {
+        remainingRetries--;
+      }
     }
-    return result;
   }
 
-  private HippoResponse getResult(HippoRequest request, int timeout) throws Exception {
+  private static int remainingMillis(long deadlineNanos) {
+    return (int) TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime());
+  }
 
-    HippoClientBootstrap hippoClientBootstrap =
-        HippoClientBootstrapMap.getBootstrap(request.getServiceName());
-    if (hippoClientBootstrap == null) {
-      throw new HippoServiceUnavailableException("[" + request.getServiceName() + "]没有可用的服务");
-    }
+  private HippoResponse getResult(HippoClientBootstrap hippoClientBootstrap,
+      HippoRequest request, int timeout) throws Exception {
     RemoteCallHandler handler = CallTypeHandler.INSTANCE.getHandler(request.getCallType());
     if (handler == null) {
       throw new HippoRequestTypeNotExistException(request.getCallType() + "不符合的现有的callType");
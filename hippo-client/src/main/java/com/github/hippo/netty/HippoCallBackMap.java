@@ -0,0 +1,63 @@
+package com.github.hippo.netty;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import io.netty.util.collection.LongObjectHashMap;
+
+/**
+ * 以requestId(long)为key保存等待返回的调用,避免String key和装箱
+ *
+ * 按requestId分段加锁,调用方线程put和回包线程remove基本不会争同一把锁
+ *
+ * @author sl
+ *
+ */
+class HippoCallBackMap {
+
+  private static final int SEGMENTS = 16;
+
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private final LongObjectHashMap<HippoResultCallBack>[] segments =
+      new LongObjectHashMap[SEGMENTS];
+
+  HippoCallBackMap() {
+    for (int i = 0; i < SEGMENTS; i++) {
+      segments[i] = new LongObjectHashMap<>();
+    }
+  }
+
+  private LongObjectHashMap<HippoResultCallBack> segment(long requestId) {
+    return segments[(int) (requestId & (SEGMENTS - 1))];
+  }
+
+  void put(long requestId, HippoResultCallBack hippoResultCallBack) {
+    LongObjectHashMap<HippoResultCallBack> segment = segment(requestId);
+    synchronized (segment) {
+      segment.put(requestId, hippoResultCallBack);
+    }
+  }
+
+  HippoResultCallBack remove(long requestId) {
+    LongObjectHashMap<HippoResultCallBack> segment = segment(requestId);
+    synchronized (segment) {
+      return segment.remove(requestId);
+    }
+  }
+
+  /**
+   * 取出并清空所有等待中的调用(连接断开时使用)
+   *
+   * @return 等待中的调用
+   */
+  List<HippoResultCallBack> removeAll() {
+    List<HippoResultCallBack> list = new ArrayList<>();
+    for (LongObjectHashMap<HippoResultCallBack> segment : segments) {
+      synchronized (segment) {
+        list.addAll(segment.values());
+        segment.clear();
+      }
+    }
+    return list;
+  }
+}
@@ -1,18 +1,29 @@
 package com.github.hippo.netty;
 
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
+import org.apache.commons.lang3.math.NumberUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import com.github.hippo.bean.HippoDecoder;
 import com.github.hippo.bean.HippoEncoder;
 import com.github.hippo.bean.HippoRequest;
 import com.github.hippo.bean.HippoResponse;
+import com.github.hippo.client.HippoClientConfig;
 import com.github.hippo.exception.HippoServiceUnavailableException;
+import com.github.hippo.govern.ServiceMetadata;
+import com.github.hippo.threadpool.HippoClientEventLoopGroup;
 
 import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
-import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
 import io.netty.channel.socket.nio.NioSocketChannel;
 import io.netty.handler.timeout.IdleStateHandler;
@@ -20,60 +31,175 @@ import io.netty.handler.timeout.IdleStateHandler;
 /**
  * hippo client Bootstrap
  * 
+ * 一个实例对应一个服务端endpoint,连接断开后在共享的io线程上按指数退避+随机抖动重连,
+ * 重连成功前available为false,负载均衡不会选到它
+ * 
  * @author sl
  *
  */
 public class HippoClientBootstrap implements Comparable<HippoClientBootstrap> {
 
+  private static final Logger LOGGER = LoggerFactory.getLogger(HippoClientBootstrap.class);
 
   private String host;
   private int port;
   private String serviceName;
-  private HippoRequestHandler handler;
+  // 每次(重)连接都会换一个新的handler,requestId和等待中的调用都是连接级别的
+  private volatile HippoRequestHandler handler;
   private AtomicLong invokeTimes = new AtomicLong(0);
-  private NioEventLoopGroup eventLoopGroup;
+  private HippoEndpointStats stats = new HippoEndpointStats();
+  private HippoClientConfig hippoClientConfig;
+  private Bootstrap bootstrap;
+  private volatile boolean available = false;
+  private volatile boolean closed = false;
+  // 在不同连接的io线程上读写(重连的新连接可能换了一个io线程)
+  private volatile int reconnectAttempts = 0;
+  // 服务端注册时附带的元数据
+  private Map<String, String> metadata = Collections.emptyMap();
+  // 预热开始时间,0表示还没连上过
+  private volatile long rampStartMillis = 0;
 
 
 
-  public HippoClientBootstrap(String serviceName, String host, int port) throws Exception {
+  public HippoClientBootstrap(String serviceName, String host, int port,
+      HippoClientConfig hippoClientConfig) throws Exception {
+    this(serviceName, host, port, hippoClientConfig, true);
+  }
+
+  /**
+   * @param connect 是否在构造时同步建立连接,false则需要调用方自己调用connectAsync
+   */
+  public HippoClientBootstrap(String serviceName, String host, int port,
+      HippoClientConfig hippoClientConfig, boolean connect) throws Exception {
     this.serviceName = serviceName;
     this.host = host;
     this.port = port;
-    init();
+    this.hippoClientConfig = hippoClientConfig;
+    this.bootstrap = createBootstrap();
+    if (connect) {
+      init();
+    }
   }
 
   private void init() {
-    eventLoopGroup = new NioEventLoopGroup(1);
     try {
-      Bootstrap bootstrap = new Bootstrap();
-      handler = new HippoRequestHandler(this.serviceName, eventLoopGroup, this.host, this.port);
-      bootstrap.group(eventLoopGroup);
-      bootstrap.channel(NioSocketChannel.class);
-      bootstrap.option(ChannelOption.TCP_NODELAY, true);
-      bootstrap.handler(new ChannelInitializer<SocketChannel>() {
-        @Override
-        public void initChannel(SocketChannel channel) throws Exception {
-          channel.pipeline().addLast(new IdleStateHandler(0, 30, 0, TimeUnit.SECONDS))
-              .addLast(new HippoEncoder(HippoRequest.class))
-              .addLast(new HippoDecoder(HippoResponse.class)).addLast(handler);
-        }
-      });
-      bootstrap.connect(host, port).sync();
+      connectAsync().sync();
     } catch (Exception e) {
       throw new HippoServiceUnavailableException(
           "[" + this.serviceName + "]服务不可用,初始化失败.host:" + host + ",port:" + port, e);
     }
   }
 
+  private Bootstrap createBootstrap() {
+    Bootstrap b = new Bootstrap();
+    b.group(HippoClientEventLoopGroup.INSTANCE.getGroup());
+    b.channel(NioSocketChannel.class);
+    b.option(ChannelOption.TCP_NODELAY, true);
+    b.handler(new ChannelInitializer<SocketChannel>() {
+      @Override
+      public void initChannel(SocketChannel channel) throws Exception {
+        HippoRequestHandler requestHandler =
+            new HippoRequestHandler(HippoClientBootstrap.this, hippoClientConfig);
+        long interval = hippoClientConfig == null ? 30000
+            : hippoClientConfig.getHeartbeatIntervalMillis();
+        long timeout =
+            hippoClientConfig == null ? 0 : hippoClientConfig.getHeartbeatTimeoutMillis();
+        // 按读空闲发ping,关闭连接的超时由requestHandler判断
+        long readerIdle = interval > 0 ? interval : timeout;
+        channel.pipeline()
+            .addLast(new IdleStateHandler(readerIdle, 0, 0, TimeUnit.MILLISECONDS))
+            .addLast(new HippoEncoder(HippoRequest.class))
+            .addLast(new HippoDecoder(HippoResponse.class)).addLast(requestHandler);
+        handler = requestHandler;
+      }
+    });
+    return b;
+  }
+
+  /**
+   * 非阻塞建立连接,连接结果通过ChannelFuture拿
+   * 
+   * @return connect future
+   */
+  public ChannelFuture connectAsync() {
+    ChannelFuture future = bootstrap.connect(host, port);
+    future.addListener((ChannelFutureListener) f -> {
+      if (!f.isSuccess()) {
+        return;
+      }
+      if (closed) {
+        f.channel().close();
+        return;
+      }
+      reconnectAttempts = 0;
+      rampStartMillis = resolveRampStart();
+      available = true;
+    });
+    return future;
+  }
+
+  /**
+   * 收到服务端GOAWAY时调用,已发出的请求照常等待返回,新请求不再选这个连接
+   */
+  void onGoAway() {
+    available = false;
+    LOGGER.info("[{}]{}:{}服务端正在下线", serviceName, host, port);
+  }
+
+  /**
+   * 连接断开(HippoRequestHandler.channelInactive)时调用,标记不可用并开始重连
+   */
+  void onDisconnected() {
+    available = false;
+    if (!closed) {
+      scheduleReconnect();
+    }
+  }
+
+  private void scheduleReconnect() {
+    long delay = nextReconnectDelay();
+    LOGGER.warn("[{}]{}:{}连接断开,{}毫秒后第{}次重连", serviceName, host, port, delay,
+        reconnectAttempts);
+    HippoClientEventLoopGroup.INSTANCE.getGroup().schedule(() -> {
+      if (closed) {
+        return;
+      }
+      connectAsync().addListener((ChannelFutureListener) f -> {
+        if (f.isSuccess()) {
+          LOGGER.info("[{}]{}:{}重连成功", serviceName, host, port);
+        } else if (!closed) {
+          scheduleReconnect();
+        }
+      });
+    }, delay, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * 指数退避,在[delay/2,delay]之间随机,避免服务端重启后所有client同一时刻重连
+   * 
+   * @return 下一次重连的等待毫秒数
+   */
+  private long nextReconnectDelay() {
+    long base = Math.max(hippoClientConfig.getReconnectBaseDelayMillis(), 1);
+    long max = Math.max(hippoClientConfig.getReconnectMaxDelayMillis(), base);
+    int attempts = Math.min(reconnectAttempts++, 30);
+    long delay = Math.min(max, base << attempts);
+    if (delay <= 0) {
+      delay = max;
+    }
+    long half = delay / 2;
+    return half + ThreadLocalRandom.current().nextLong(delay - half + 1);
+  }
+
 
   public HippoResultCallBack sendAsync(HippoRequest request, int timeout) throws Exception {
-    HippoResultCallBack hippoResultCallBack = new HippoResultCallBack(request, timeout);
+    HippoResultCallBack hippoResultCallBack = new HippoResultCallBack(request, timeout, this);
     this.handler.sendAsync(hippoResultCallBack);
     return hippoResultCallBack;
   }
 
   public HippoResponse sendWithCallBack(HippoRequest request, int timeout) {
-    HippoResultCallBack hippoResultCallBack = new HippoResultCallBack(request, timeout);
+    HippoResultCallBack hippoResultCallBack = new HippoResultCallBack(request, timeout, this);
     return this.handler.sendWithCallBack(hippoResultCallBack);
   }
 
@@ -93,10 +219,68 @@ public class HippoClientBootstrap implements Comparable<HippoClientBootstrap> {
     return serviceName;
   }
 
+  public HippoEndpointStats getStats() {
+    return stats;
+  }
+
   public AtomicLong getInvokeTimes() {
     return invokeTimes;
   }
 
+  public Map<String, String> getMetadata() {
+    return metadata;
+  }
+
+  public void setMetadata(Map<String, String> metadata) {
+    this.metadata = metadata == null ? Collections.emptyMap() : metadata;
+  }
+
+  /**
+   * @return 相对客户端的位置,见HippoLocalityPolicy
+   */
+  public int getLocality() {
+    return HippoLocalityPolicy.INSTANCE.localityOf(metadata);
+  }
+
+  /**
+   * 服务端给了启动时间就从服务端启动开始预热(客户端重启时不会把老服务端当成新的),否则从连上开始
+   */
+  private long resolveRampStart() {
+    long now = System.currentTimeMillis();
+    long startTime = NumberUtils.toLong(metadata.get(ServiceMetadata.START_TIME), 0);
+    return startTime > 0 ? Math.min(startTime, now) : now;
+  }
+
+  /**
+   * slow start权重:预热窗口内从minWeight线性增长到1
+   * 
+   * @return 0~1
+   */
+  public double getWeight() {
+    long window =
+        NumberUtils.toLong(metadata.get(ServiceMetadata.WARMUP_MILLIS),
+            hippoClientConfig == null ? 0 : hippoClientConfig.getSlowStartWindowMillis());
+    long rampStart = rampStartMillis;
+    if (window <= 0 || rampStart == 0) {
+      return 1;
+    }
+    double progress = (double) (System.currentTimeMillis() - rampStart) / window;
+    if (progress >= 1) {
+      return 1;
+    }
+    return Math.max(hippoClientConfig == null ? 0 : hippoClientConfig.getSlowStartMinWeight(),
+        progress);
+  }
+
+  /**
+   * 连接是否可用,重连成功前为false
+   * 
+   * @return available
+   */
+  public boolean isAvailable() {
+    return available;
+  }
+
   @Override
   public int compareTo(HippoClientBootstrap o) {
     Long l1 = this.invokeTimes.get();
@@ -104,10 +288,15 @@ public class HippoClientBootstrap implements Comparable<HippoClientBootstrap> {
     return l1.compareTo(l2);
   }
 
+  /**
+   * 服务端下线时调用,关闭连接且不再重连
+   */
   public void shutdown() {
-    if (eventLoopGroup != null && !eventLoopGroup.isShutdown()
-        && !eventLoopGroup.isShuttingDown()) {
-      eventLoopGroup.shutdownGracefully();
+    closed = true;
+    available = false;
+    HippoRequestHandler current = handler;
+    if (current != null) {
+      current.close();
     }
   }
 }
@@ -1,10 +1,26 @@
 package com.github.hippo.netty;
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.hippo.client.HippoClientConfig;
+import com.github.hippo.exception.HippoServiceUnavailableException;
+
+import io.netty.channel.ChannelFutureListener;
 
 /**
+ * 
+ * 连接管理:读操作不加锁,同一个endpoint的并发建连共享一个future,不同endpoint之间互不阻塞
  * 
  * @author sl
  *
@@ -12,18 +28,87 @@ import java.util.concurrent.ConcurrentHashMap;
 public final class HippoClientBootstrapMap {
   private HippoClientBootstrapMap() {}
 
+  private static final Logger LOGGER = LoggerFactory.getLogger(HippoClientBootstrapMap.class);
+
   private static final Map<String, Map<String, HippoClientBootstrap>> BOOTSTRAPMAP =
       new ConcurrentHashMap<>();
 
-  public synchronized static void put(String serviceName, String host, int port,
+  // 正在建立中的连接,key为serviceName/host:port
+  private static final Map<String, CompletableFuture<HippoClientBootstrap>> CONNECTING =
+      new ConcurrentHashMap<>();
+
+  /**
+   * @return 是否放入成功,已经存在相同的host:port返回false
+   */
+  public static boolean put(String serviceName, String host, int port,
       HippoClientBootstrap bootstrap) {
-    if (!BOOTSTRAPMAP.containsKey(serviceName)) {
-      Map<String, HippoClientBootstrap> map = new ConcurrentHashMap<>();
-      map.put(host + ":" + port, bootstrap);
-      BOOTSTRAPMAP.putIfAbsent(serviceName, map);
-    } else {
-      BOOTSTRAPMAP.get(serviceName).putIfAbsent(host + ":" + port, bootstrap);
+    Map<String, HippoClientBootstrap> map =
+        BOOTSTRAPMAP.computeIfAbsent(serviceName, k -> new ConcurrentHashMap<>());
+    // 新endpoint从当前最小的调用次数开始计数,否则invokeTimes为0会一直被选中
+    map.values().stream().mapToLong(b -> b.getInvokeTimes().get()).min()
+        .ifPresent(min -> bootstrap.getInvokeTimes().set(min));
+    return map.putIfAbsent(host + ":" + port, bootstrap) == null;
+  }
+
+  /**
+   * 非阻塞地连接一个endpoint,已经连上直接返回;正在连接中则返回同一个future
+   * 
+   * @param serviceName serviceName
+   * @param host host
+   * @param port port
+   * @param hippoClientConfig hippoClientConfig
+   * @param metadata 服务端注册时附带的元数据
+   * @return 连接成功后放入map的bootstrap
+   */
+  public static CompletableFuture<HippoClientBootstrap> connect(String serviceName, String host,
+      int port, HippoClientConfig hippoClientConfig, Map<String, String> metadata) {
+    String hostAndPort = host + ":" + port;
+    Map<String, HippoClientBootstrap> map = BOOTSTRAPMAP.get(serviceName);
+    HippoClientBootstrap exist = map == null ? null : map.get(hostAndPort);
+    if (exist != null) {
+      return CompletableFuture.completedFuture(exist);
+    }
+    String key = serviceName + "/" + hostAndPort;
+    CompletableFuture<HippoClientBootstrap> future = new CompletableFuture<>();
+    CompletableFuture<HippoClientBootstrap> pending = CONNECTING.putIfAbsent(key, future);
+    if (pending != null) {
+      return pending;
     }
+    // 上面查map之后,别的connect可能刚好连上并放入了map
+    map = BOOTSTRAPMAP.get(serviceName);
+    exist = map == null ? null : map.get(hostAndPort);
+    if (exist != null) {
+      CONNECTING.remove(key, future);
+      future.complete(exist);
+      return future;
+    }
+    try {
+      HippoClientBootstrap bootstrap =
+          new HippoClientBootstrap(serviceName, host, port, hippoClientConfig, false);
+      bootstrap.setMetadata(metadata);
+      // 放入map(或者连接失败)之后才从CONNECTING里移除,中间不会有别的connect再建一个连接
+      bootstrap.connectAsync().addListener((ChannelFutureListener) f -> {
+        if (!f.isSuccess()) {
+          CONNECTING.remove(key, future);
+          bootstrap.shutdown();
+          future.completeExceptionally(new HippoServiceUnavailableException(
+              "[" + serviceName + "]服务不可用,连接失败.host:" + host + ",port:" + port, f.cause()));
+        } else if (put(serviceName, host, port, bootstrap)) {
+          CONNECTING.remove(key, future);
+          future.complete(bootstrap);
+        } else {
+          // 外部直接调用put放入了同一个endpoint,用已有的连接
+          CONNECTING.remove(key, future);
+          bootstrap.shutdown();
+          future.complete(get(serviceName).get(hostAndPort));
+        }
+      });
+    } catch (Exception e) {
+      LOGGER.error("connect error:[" + serviceName + "]" + hostAndPort, e);
+      CONNECTING.remove(key, future);
+      future.completeExceptionally(e);
+    }
+    return future;
   }
 
 
@@ -31,6 +116,25 @@ public final class HippoClientBootstrapMap {
     return BOOTSTRAPMAP.get(serviceName);
   }
 
+  static void forEach(BiConsumer<String, Map<String, HippoClientBootstrap>> action) {
+    BOOTSTRAPMAP.forEach(action);
+  }
+
+  /**
+   * 所有endpoint的统计和摘除状态
+   * 
+   * @return serviceName -> (host:port -> stats)
+   */
+  public static Map<String, Map<String, HippoEndpointStats>> getEndpointStats() {
+    Map<String, Map<String, HippoEndpointStats>> result = new HashMap<>();
+    BOOTSTRAPMAP.forEach((serviceName, map) -> {
+      Map<String, HippoEndpointStats> stats = new HashMap<>();
+      map.forEach((hostAndPort, bootstrap) -> stats.put(hostAndPort, bootstrap.getStats()));
+      result.put(serviceName, stats);
+    });
+    return result;
+  }
+
   public static boolean containsKey(String serviceName) {
     return BOOTSTRAPMAP.containsKey(serviceName);
   }
@@ -43,26 +147,91 @@ public final class HippoClientBootstrapMap {
     return map.containsKey(hostAndPort);
   }
 
+  /**
+   * 移除并关闭一个endpoint的连接
+   */
   public static void remove(String serviceName, String host, int port) {
     Map<String, HippoClientBootstrap> map = BOOTSTRAPMAP.get(serviceName);
     if (map != null) {
-      map.remove(host + ":" + port);
+      HippoClientBootstrap bootstrap = map.remove(host + ":" + port);
+      if (bootstrap != null) {
+        bootstrap.shutdown();
+      }
     }
   }
 
   public static HippoClientBootstrap getBootstrap(String serviceName) {
+    return getBootstrap(serviceName, null);
+  }
+
+  /**
+   * @param excluded 本次调用不再选的endpoint(比如已经返回server busy的),可以为null
+   */
+  public static HippoClientBootstrap getBootstrap(String serviceName,
+      Collection<HippoClientBootstrap> excluded) {
     Map<String, HippoClientBootstrap> map = get(serviceName);
     if (map == null || map.isEmpty()) {
       return null;
     }
-    // like round robin
-    Optional<HippoClientBootstrap> findFirst = map.values().stream().sorted().findFirst();
-    if (findFirst.isPresent()) {
-      HippoClientBootstrap hippoClientBootstrap = findFirst.get();
-      hippoClientBootstrap.getInvokeTimes().incrementAndGet();
-      return hippoClientBootstrap;
-    } else {
+    Collection<HippoClientBootstrap> endpoints = map.values();
+    if (excluded != null && !excluded.isEmpty()) {
+      endpoints = endpoints.stream().filter(b -> !excluded.contains(b))
+          .collect(Collectors.toList());
+    }
+    // like round robin,正在重连的连接不参与选择
+    // 就近选择,同时过滤掉被摘除的
+    List<HippoClientBootstrap> candidates = HippoLocalityPolicy.INSTANCE.select(endpoints);
+    if (candidates.isEmpty()) {
+      // 全部被摘除时忽略摘除状态,总比没有可用的好
+      candidates = endpoints.stream().filter(HippoClientBootstrap::isAvailable).sorted()
+          .collect(Collectors.toList());
+    }
+    if (candidates.isEmpty()) {
       return null;
     }
+    HippoClientBootstrap hippoClientBootstrap = selectWeighted(candidates);
+    hippoClientBootstrap.getInvokeTimes().incrementAndGet();
+    return hippoClientBootstrap;
+  }
+
+  /**
+   * 没有预热中的endpoint时选调用次数最少的(candidates已按调用次数排序);
+   * 有预热中的endpoint(slow start)时按权重随机选,权重w的endpoint拿到的流量约为它应得份额的w倍
+   */
+  private static HippoClientBootstrap selectWeighted(List<HippoClientBootstrap> candidates) {
+    double[] weights = new double[candidates.size()];
+    double total = 0;
+    boolean warming = false;
+    long minWarmInvokeTimes = Long.MAX_VALUE;
+    for (int i = 0; i < weights.length; i++) {
+      HippoClientBootstrap candidate = candidates.get(i);
+      weights[i] = Math.min(Math.max(candidate.getWeight(), 0), 1);
+      total += weights[i];
+      if (weights[i] < 1) {
+        warming = true;
+      } else {
+        minWarmInvokeTimes = Math.min(minWarmInvokeTimes, candidate.getInvokeTimes().get());
+      }
+    }
+    if (!warming || total <= 0) {
+      return candidates.get(0);
+    }
+    if (minWarmInvokeTimes != Long.MAX_VALUE) {
+      // 预热中的endpoint调用次数不落后于其他endpoint,预热结束后不会因为调用次数最少而被集中选中
+      long floor = minWarmInvokeTimes;
+      for (int i = 0; i < weights.length; i++) {
+        if (weights[i] < 1) {
+          candidates.get(i).getInvokeTimes().accumulateAndGet(floor, Math::max);
+        }
+      }
+    }
+    double random = ThreadLocalRandom.current().nextDouble() * total;
+    for (int i = 0; i < weights.length; i++) {
+      random -= weights[i];
+      if (random < 0) {
+        return candidates.get(i);
+      }
+    }
+    return candidates.get(weights.length - 1);
   }
 }
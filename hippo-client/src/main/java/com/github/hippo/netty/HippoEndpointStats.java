@@ -0,0 +1,206 @@
+package com.github.hippo.netty;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 单个endpoint的滚动统计:EWMA延迟,心跳EWMA往返时间,统计周期内的请求数/失败数,超时次数,以及摘除状态
+ *
+ * 失败只统计超时和连接失败,服务端返回的业务异常不算endpoint故障
+ *
+ * @author sl
+ *
+ */
+public class HippoEndpointStats {
+
+  // EWMA平滑系数,越大越偏向最近的样本
+  private static final double ALPHA = 0.3;
+
+  // double的bits,用CAS更新
+  private final AtomicLong ewmaLatencyBits = new AtomicLong(Double.doubleToLongBits(-1));
+  private final AtomicLong ewmaRttBits = new AtomicLong(Double.doubleToLongBits(-1));
+  private final AtomicLong intervalRequests = new AtomicLong(0);
+  private final AtomicLong intervalFailures = new AtomicLong(0);
+  private final AtomicInteger consecutiveFailures = new AtomicInteger(0);
+  private final AtomicLong timeoutCount = new AtomicLong(0);
+  private final AtomicLong failureCount = new AtomicLong(0);
+  private final AtomicLong busyCount = new AtomicLong(0);
+  private volatile double lastErrorRatio = 0;
+  private volatile long ejectedUntilMillis = 0;
+  private volatile int ejectionCount = 0;
+  private final AtomicLong totalEjections = new AtomicLong(0);
+  private final AtomicInteger inFlight = new AtomicInteger(0);
+
+  void onSend() {
+    inFlight.incrementAndGet();
+  }
+
+  void recordSuccess(long latencyNanos) {
+    inFlight.decrementAndGet();
+    intervalRequests.incrementAndGet();
+    consecutiveFailures.set(0);
+    updateLatency(latencyNanos / 1_000_000d);
+  }
+
+  /**
+   * 服务端过载拒绝:不算endpoint故障,也不计入延迟(拒绝很快,计入会让过载节点看起来更快)
+   */
+  void recordBusy() {
+    inFlight.decrementAndGet();
+    busyCount.incrementAndGet();
+  }
+
+  /**
+   * @return 连续失败次数
+   */
+  int recordFailure(boolean timeout, long latencyNanos) {
+    inFlight.decrementAndGet();
+    intervalRequests.incrementAndGet();
+    intervalFailures.incrementAndGet();
+    failureCount.incrementAndGet();
+    if (timeout) {
+      timeoutCount.incrementAndGet();
+      // 超时的耗时也计入延迟,慢节点才能被识别出来
+      updateLatency(latencyNanos / 1_000_000d);
+    }
+    return consecutiveFailures.incrementAndGet();
+  }
+
+  /**
+   * 连接断开时还在等待的调用:只计入失败总数,不计入错误率和连续失败(断开本身按一次失败记)
+   */
+  void recordConnectionLost() {
+    inFlight.decrementAndGet();
+    failureCount.incrementAndGet();
+  }
+
+  /**
+   * 有调用在等待时连接断开,不管断开时有多少个调用都只算一次失败
+   * 
+   * @return 连续失败次数
+   */
+  int recordDisconnect() {
+    intervalRequests.incrementAndGet();
+    intervalFailures.incrementAndGet();
+    return consecutiveFailures.incrementAndGet();
+  }
+
+  /**
+   * 心跳ping/pong的往返时间
+   */
+  void recordRtt(long rttNanos) {
+    updateEwma(ewmaRttBits, rttNanos / 1_000_000d);
+  }
+
+  private void updateLatency(double latencyMillis) {
+    updateEwma(ewmaLatencyBits, latencyMillis);
+  }
+
+  private static void updateEwma(AtomicLong bits, double sample) {
+    long prev;
+    long next;
+    do {
+      prev = bits.get();
+      double old = Double.longBitsToDouble(prev);
+      double value = old < 0 ? sample : old + ALPHA * (sample - old);
+      next = Double.doubleToLongBits(value);
+    } while (!bits.compareAndSet(prev, next));
+  }
+
+  /**
+   * 结束一个统计周期,返回这个周期的请求数,同时算好错误率
+   */
+  long rollInterval() {
+    long requests = intervalRequests.getAndSet(0);
+    long failures = intervalFailures.getAndSet(0);
+    lastErrorRatio = requests == 0 ? 0 : (double) failures / requests;
+    return requests;
+  }
+
+  void eject(long durationMillis) {
+    ejectedUntilMillis = System.currentTimeMillis() + durationMillis;
+    ejectionCount++;
+    totalEjections.incrementAndGet();
+    consecutiveFailures.set(0);
+  }
+
+  void decayEjectionCount() {
+    if (ejectionCount > 0) {
+      ejectionCount--;
+    }
+  }
+
+  public boolean isEjected() {
+    return ejectedUntilMillis > System.currentTimeMillis();
+  }
+
+  /**
+   * @return EWMA延迟(毫秒),没有样本返回-1
+   */
+  public double getEwmaLatencyMillis() {
+    return Double.longBitsToDouble(ewmaLatencyBits.get());
+  }
+
+  /**
+   * @return 心跳EWMA往返时间(毫秒),没有样本返回-1
+   */
+  public double getEwmaRttMillis() {
+    return Double.longBitsToDouble(ewmaRttBits.get());
+  }
+
+  /**
+   * @return 上一个统计周期的错误率
+   */
+  public double getErrorRatio() {
+    return lastErrorRatio;
+  }
+
+  /**
+   * @return 已发出还没返回的请求数
+   */
+  public int getInFlight() {
+    return inFlight.get();
+  }
+
+  public int getConsecutiveFailures() {
+    return consecutiveFailures.get();
+  }
+
+  public long getTimeoutCount() {
+    return timeoutCount.get();
+  }
+
+  public long getFailureCount() {
+    return failureCount.get();
+  }
+
+  /**
+   * @return 被服务端以server busy拒绝的次数
+   */
+  public long getBusyCount() {
+    return busyCount.get();
+  }
+
+  public long getEjectedUntilMillis() {
+    return ejectedUntilMillis;
+  }
+
+  public int getEjectionCount() {
+    return ejectionCount;
+  }
+
+  public long getTotalEjections() {
+    return totalEjections.get();
+  }
+
+  @Override
+  public String toString() {
+    return "HippoEndpointStats [ewmaLatencyMillis=" + getEwmaLatencyMillis() + ", ewmaRttMillis="
+        + getEwmaRttMillis() + ", errorRatio=" + lastErrorRatio + ", inFlight=" + getInFlight()
+        + ", consecutiveFailures=" + getConsecutiveFailures()
+        + ", timeoutCount=" + getTimeoutCount() + ", failureCount=" + getFailureCount()
+        + ", busyCount=" + getBusyCount()
+        + ", ejected=" + isEjected() + ", ejectionCount=" + ejectionCount
+        + ", totalEjections=" + getTotalEjections() + "]";
+  }
+}
@@ -0,0 +1,110 @@
+package com.github.hippo.netty;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.hippo.client.HippoClientConfig;
+import com.github.hippo.govern.ServiceMetadata;
+
+/**
+ * 就近选择:同机 > 同zone > 其他
+ *
+ * 某一级可用的endpoint占比低于minHealthyPercent,或者这一级每个endpoint处理中的请求都达到maxInFlight时,溢出到下一级
+ *
+ * @author sl
+ *
+ */
+public enum HippoLocalityPolicy {
+  INSTANCE;
+
+  public static final int SAME_HOST = 0;
+  public static final int SAME_ZONE = 1;
+  public static final int REMOTE = 2;
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(HippoLocalityPolicy.class);
+
+  private volatile HippoClientConfig hippoClientConfig;
+  private volatile String hostId = "";
+  private volatile String zone = "";
+
+  public void configure(HippoClientConfig hippoClientConfig) {
+    String localHostId = hippoClientConfig.getHostId();
+    if (StringUtils.isBlank(localHostId)) {
+      try {
+        localHostId = InetAddress.getLocalHost().getHostName();
+      } catch (UnknownHostException e) {
+        LOGGER.error("InetAddress.getLocalHost() error", e);
+      }
+    }
+    this.hostId = StringUtils.trimToEmpty(localHostId);
+    this.zone = StringUtils.trimToEmpty(hippoClientConfig.getZone());
+    this.hippoClientConfig = hippoClientConfig;
+  }
+
+  /**
+   * @param metadata 服务端注册时附带的元数据
+   * @return SAME_HOST/SAME_ZONE/REMOTE
+   */
+  int localityOf(Map<String, String> metadata) {
+    HippoClientConfig config = hippoClientConfig;
+    if (config == null || !config.isLocalityEnabled()) {
+      return REMOTE;
+    }
+    if (!hostId.isEmpty() && hostId.equals(metadata.get(ServiceMetadata.HOST_ID))) {
+      return SAME_HOST;
+    }
+    if (!zone.isEmpty() && zone.equals(metadata.get(ServiceMetadata.ZONE))) {
+      return SAME_ZONE;
+    }
+    return REMOTE;
+  }
+
+  /**
+   * 选出本次请求可以使用的endpoint(已按invokeTimes排序)
+   *
+   * @param bootstraps 某个服务的所有endpoint
+   * @return 可以使用的endpoint,可能为空
+   */
+  List<HippoClientBootstrap> select(Collection<HippoClientBootstrap> bootstraps) {
+    HippoClientConfig config = hippoClientConfig;
+    if (config != null && config.isLocalityEnabled()) {
+      for (int locality = SAME_HOST; locality < REMOTE; locality++) {
+        List<HippoClientBootstrap> tier = new ArrayList<>();
+        for (HippoClientBootstrap bootstrap : bootstraps) {
+          if (bootstrap.getLocality() == locality) {
+            tier.add(bootstrap);
+          }
+        }
+        if (tier.isEmpty()) {
+          continue;
+        }
+        List<HippoClientBootstrap> healthy = healthy(tier);
+        if (healthy.isEmpty()
+            || healthy.size() * 100 < tier.size() * config.getLocalityMinHealthyPercent()) {
+          continue;
+        }
+        int maxInFlight = config.getLocalityMaxInFlight();
+        if (maxInFlight > 0
+            && healthy.stream().allMatch(b -> b.getStats().getInFlight() >= maxInFlight)) {
+          continue;
+        }
+        return healthy;
+      }
+    }
+    return healthy(bootstraps);
+  }
+
+  private static List<HippoClientBootstrap> healthy(Collection<HippoClientBootstrap> bootstraps) {
+    return bootstraps.stream().filter(b -> b.isAvailable() && !b.getStats().isEjected()).sorted()
+        .collect(Collectors.toList());
+  }
+}
@@ -0,0 +1,148 @@
+package com.github.hippo.netty;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.hippo.client.HippoClientConfig;
+import com.github.hippo.threadpool.HippoClientEventLoopGroup;
+
+/**
+ * 异常endpoint摘除
+ *
+ * 连续失败达到阈值时立即摘除;另外每个统计周期按错误率,延迟和心跳RTT(相对同服务其他endpoint的中位数)检查一次.
+ * 摘除时长按摘除次数指数增长,一直健康的endpoint摘除次数会逐渐衰减;同一服务最多摘除maxEjectionPercent的endpoint
+ *
+ * @author sl
+ *
+ */
+public enum HippoOutlierDetector {
+  INSTANCE;
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(HippoOutlierDetector.class);
+
+  // 心跳RTT比中位数高出不到这么多毫秒时不算异常,避免亚毫秒级的抖动导致摘除
+  private static final double RTT_FLOOR_MILLIS = 5;
+
+  private volatile HippoClientConfig hippoClientConfig;
+
+  private final AtomicBoolean started = new AtomicBoolean(false);
+
+  public void start(HippoClientConfig hippoClientConfig) {
+    if (!hippoClientConfig.isOutlierEnabled() || !started.compareAndSet(false, true)) {
+      return;
+    }
+    this.hippoClientConfig = hippoClientConfig;
+    long interval = hippoClientConfig.getOutlierIntervalMillis();
+    HippoClientEventLoopGroup.INSTANCE.getGroup().scheduleAtFixedRate(this::detect, interval,
+        interval, TimeUnit.MILLISECONDS);
+  }
+
+  void onFailure(HippoClientBootstrap bootstrap, int consecutiveFailures) {
+    HippoClientConfig config = hippoClientConfig;
+    if (config != null && consecutiveFailures >= config.getOutlierConsecutiveFailures()) {
+      eject(bootstrap, "连续失败" + consecutiveFailures + "次");
+    }
+  }
+
+  private void detect() {
+    try {
+      HippoClientBootstrapMap.forEach((serviceName, map) -> detect(map.values()));
+    } catch (Exception e) {
+      LOGGER.error("outlier detect error", e);
+    }
+  }
+
+  private void detect(Collection<HippoClientBootstrap> endpoints) {
+    HippoClientConfig config = hippoClientConfig;
+    List<Double> latencies = new ArrayList<>();
+    List<HippoClientBootstrap> checked = new ArrayList<>();
+    List<Double> rtts = new ArrayList<>();
+    for (HippoClientBootstrap bootstrap : endpoints) {
+      HippoEndpointStats stats = bootstrap.getStats();
+      long requests = stats.rollInterval();
+      if (stats.isEjected()) {
+        continue;
+      }
+      if (stats.getEwmaRttMillis() >= 0) {
+        rtts.add(stats.getEwmaRttMillis());
+      }
+      if (requests < config.getOutlierMinRequests()) {
+        synchronized (this) {
+          stats.decayEjectionCount();
+        }
+        continue;
+      }
+      checked.add(bootstrap);
+      latencies.add(stats.getEwmaLatencyMillis());
+    }
+    double median = median(latencies);
+    double medianRtt = rtts.size() > 2 ? median(rtts) : -1;
+    for (HippoClientBootstrap bootstrap : endpoints) {
+      HippoEndpointStats stats = bootstrap.getStats();
+      double rtt = stats.getEwmaRttMillis();
+      if (medianRtt >= 0 && !stats.isEjected() && rtt > medianRtt * config.getOutlierLatencyFactor()
+          && rtt - medianRtt > RTT_FLOOR_MILLIS) {
+        eject(bootstrap, "心跳RTT" + rtt + "ms,中位数" + medianRtt + "ms");
+        if (stats.isEjected()) {
+          checked.remove(bootstrap);
+        }
+      }
+    }
+    for (HippoClientBootstrap bootstrap : checked) {
+      HippoEndpointStats stats = bootstrap.getStats();
+      if (stats.getErrorRatio() > config.getOutlierMaxErrorRatio()) {
+        eject(bootstrap, "错误率" + stats.getErrorRatio());
+      } else if (checked.size() > 2 && median > 0
+          && stats.getEwmaLatencyMillis() > median * config.getOutlierLatencyFactor()) {
+        eject(bootstrap, "延迟" + stats.getEwmaLatencyMillis() + "ms,中位数" + median + "ms");
+      } else {
+        synchronized (this) {
+          stats.decayEjectionCount();
+        }
+      }
+    }
+  }
+
+  private static double median(List<Double> values) {
+    if (values.isEmpty()) {
+      return -1;
+    }
+    Collections.sort(values);
+    int middle = values.size() / 2;
+    return values.size() % 2 == 1 ? values.get(middle)
+        : (values.get(middle - 1) + values.get(middle)) / 2;
+  }
+
+  private synchronized void eject(HippoClientBootstrap bootstrap, String reason) {
+    HippoEndpointStats stats = bootstrap.getStats();
+    if (stats.isEjected()) {
+      return;
+    }
+    Map<String, HippoClientBootstrap> map =
+        HippoClientBootstrapMap.get(bootstrap.getServiceName());
+    if (map != null) {
+      long ejected = map.values().stream().filter(b -> b.getStats().isEjected()).count();
+      if ((ejected + 1) * 100 > (long) map.size()
+          * hippoClientConfig.getOutlierMaxEjectionPercent()) {
+        return;
+      }
+    }
+    long max = hippoClientConfig.getOutlierMaxEjectionMillis();
+    long duration = hippoClientConfig.getOutlierBaseEjectionMillis()
+        << Math.min(stats.getEjectionCount(), 20);
+    if (duration <= 0 || duration > max) {
+      duration = max;
+    }
+    stats.eject(duration);
+    LOGGER.warn("[{}]{}:{}被摘除{}毫秒,原因:{},{}", bootstrap.getServiceName(), bootstrap.getHost(),
+        bootstrap.getPort(), duration, reason, stats);
+  }
+}
@@ -0,0 +1,73 @@
+package com.github.hippo.netty;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.github.hippo.bean.HippoRequest;
+import com.github.hippo.bean.HippoRequestBatch;
+
+import io.netty.channel.Channel;
+
+/**
+ * 把同一连接上的小请求攒成批量帧发送
+ * 
+ * 攒够maxSize个立即发送,否则第一个请求进来后最多等maxDelayMicros微秒;发送都在channel的io线程里做
+ * 
+ * @author sl
+ *
+ */
+class HippoRequestBatcher {
+
+  private final int maxSize;
+  private final long maxDelayMicros;
+  private final Queue<HippoRequest> queue = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger size = new AtomicInteger(0);
+  private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+  HippoRequestBatcher(int maxSize, long maxDelayMicros) {
+    this.maxSize = Math.max(maxSize, 1);
+    this.maxDelayMicros = Math.max(maxDelayMicros, 0);
+  }
+
+  void add(Channel channel, HippoRequest request) {
+    queue.offer(request);
+    if (size.incrementAndGet() >= maxSize) {
+      channel.eventLoop().execute(() -> flush(channel));
+    } else if (scheduled.compareAndSet(false, true)) {
+      channel.eventLoop().schedule(() -> {
+        scheduled.set(false);
+        flush(channel);
+      }, maxDelayMicros, TimeUnit.MICROSECONDS);
+    }
+  }
+
+  private void flush(Channel channel) {
+    boolean written = false;
+    while (true) {
+      List<HippoRequest> batch = new ArrayList<>(maxSize);
+      HippoRequest request;
+      while (batch.size() < maxSize && (request = queue.poll()) != null) {
+        batch.add(request);
+      }
+      if (batch.isEmpty()) {
+        break;
+      }
+      size.addAndGet(-batch.size());
+      // 只有一个就没必要包一层
+      if (batch.size() == 1) {
+        channel.write(batch.get(0));
+      } else {
+        channel.write(new HippoRequestBatch(batch));
+      }
+      written = true;
+    }
+    if (written) {
+      channel.flush();
+    }
+  }
+}
@@ -1,21 +1,28 @@
 package com.github.hippo.netty;
 
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.github.hippo.bean.HippoCancel;
+import com.github.hippo.bean.HippoGoAway;
+import com.github.hippo.bean.HippoHeartbeat;
 import com.github.hippo.bean.HippoRequest;
 import com.github.hippo.bean.HippoResponse;
+import com.github.hippo.bean.HippoResponseBatch;
 import com.github.hippo.callback.CallTypeHandler;
 import com.github.hippo.callback.RemoteCallHandler;
-import com.github.hippo.enums.HippoRequestEnum;
+import com.github.hippo.client.HippoClientConfig;
+import com.github.hippo.exception.HippoServerBusyException;
 import com.github.hippo.exception.HippoServiceException;
+import com.github.hippo.exception.HippoServiceUnavailableException;
 import com.github.hippo.threadpool.HippoClientProcessPool;
 
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandlerContext;
-import io.netty.channel.EventLoopGroup;
 import io.netty.channel.SimpleChannelInboundHandler;
 import io.netty.handler.timeout.IdleState;
 import io.netty.handler.timeout.IdleStateEvent;
@@ -31,19 +38,28 @@ public class HippoRequestHandler extends SimpleChannelInboundHandler<HippoRespon
 
   private static final Logger LOGGER = LoggerFactory.getLogger(HippoRequestHandler.class);
 
-  private ConcurrentHashMap<String, HippoResultCallBack> callBackMap = new ConcurrentHashMap<>();
-  private String serviceName;
-  private EventLoopGroup eventLoopGroup;
-  private Channel channel;
-  private String host;
-  private int port;
+  private HippoCallBackMap callBackMap = new HippoCallBackMap();
+  // 连接内自增的requestId,不同连接可以重复
+  private AtomicLong requestIdSequence = new AtomicLong(0);
+  private HippoClientBootstrap hippoClientBootstrap;
+  // channelRegistered时在io线程上设置,发送的线程读
+  private volatile Channel channel;
+  // 不开启批量发送时为null
+  private HippoRequestBatcher batcher;
+  // 多久没有读到任何数据就关闭连接,0表示不关闭
+  private final long heartbeatTimeoutNanos;
+  // 最后一次读到数据的时间,只在io线程上读写
+  private long lastReadNanos;
 
-  public HippoRequestHandler(String serviceName, EventLoopGroup eventLoopGroup, String host,
-      int port) {
-    this.serviceName = serviceName;
-    this.eventLoopGroup = eventLoopGroup;
-    this.host = host;
-    this.port = port;
+  public HippoRequestHandler(HippoClientBootstrap hippoClientBootstrap,
+      HippoClientConfig hippoClientConfig) {
+    this.hippoClientBootstrap = hippoClientBootstrap;
+    if (hippoClientConfig != null && hippoClientConfig.isBatchEnabled()) {
+      this.batcher = new HippoRequestBatcher(hippoClientConfig.getBatchMaxSize(),
+          hippoClientConfig.getBatchMaxDelayMicros());
+    }
+    this.heartbeatTimeoutNanos = hippoClientConfig == null ? 0
+        : TimeUnit.MILLISECONDS.toNanos(hippoClientConfig.getHeartbeatTimeoutMillis());
   }
 
 
@@ -53,68 +69,187 @@ public class HippoRequestHandler extends SimpleChannelInboundHandler<HippoRespon
     this.channel = ctx.channel();
   }
 
+  @Override
+  public void channelActive(ChannelHandlerContext ctx) throws Exception {
+    // 建立连接花的时间不算读空闲
+    lastReadNanos = System.nanoTime();
+    super.channelActive(ctx);
+  }
+
+
+  @Override
+  public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+    lastReadNanos = System.nanoTime();
+    if (msg instanceof HippoHeartbeat) {
+      HippoHeartbeat heartbeat = (HippoHeartbeat) msg;
+      if (heartbeat.isPong() && heartbeat.getTimestamp() != 0) {
+        hippoClientBootstrap.getStats().recordRtt(System.nanoTime() - heartbeat.getTimestamp());
+      }
+      return;
+    }
+    if (msg instanceof HippoGoAway) {
+      // 服务端正在下线,不再选这个连接,等服务端处理完关闭连接后走重连
+      hippoClientBootstrap.onGoAway();
+      return;
+    }
+    if (msg instanceof HippoResponseBatch) {
+      List<HippoResponse> responses = ((HippoResponseBatch) msg).getResponses();
+      if (responses != null) {
+        responses.forEach(this::receive);
+      }
+      return;
+    }
+    super.channelRead(ctx, msg);
+  }
 
   @Override
   protected void channelRead0(ChannelHandlerContext arg0, HippoResponse response) throws Exception {
-    // ping不需要记录到返回结果MAP里
-    if (response != null && !("-99").equals(response.getRequestId())) {
+    receive(response);
+  }
+
+  private void receive(HippoResponse response) {
+    if (response != null) {
       HippoClientProcessPool.INSTANCE.getPool().execute(() -> {
         HippoResultCallBack hippoResultCallBack = callBackMap.remove(response.getRequestId());
         // oneway方式没有hippoResultCallBack
         if (hippoResultCallBack == null) {
           return;
         }
-        RemoteCallHandler handler = CallTypeHandler.INSTANCE
-            .getHandler(hippoResultCallBack.getHippoRequest().getCallType());
-        if (handler != null) {
-          handler.back(hippoResultCallBack, response);
+        if (response.isError() && response.getThrowable() instanceof HippoServerBusyException) {
+          hippoResultCallBack.recordBusy();
+        } else {
+          hippoResultCallBack.recordSuccess();
         }
+        back(hippoResultCallBack, response);
       });
     }
   }
 
+  private void back(HippoResultCallBack hippoResultCallBack, HippoResponse response) {
+    RemoteCallHandler handler =
+        CallTypeHandler.INSTANCE.getHandler(hippoResultCallBack.getHippoRequest().getCallType());
+    if (handler != null) {
+      handler.back(hippoResultCallBack, response);
+    }
+  }
+
+  private void fail(HippoResultCallBack hippoResultCallBack, Throwable throwable) {
+    hippoResultCallBack.recordFailure(false);
+    back(hippoResultCallBack, errorResponse(hippoResultCallBack, throwable));
+  }
+
+  private HippoResponse errorResponse(HippoResultCallBack hippoResultCallBack,
+      Throwable throwable) {
+    HippoResponse response = buildEmptyHippoResponse(hippoResultCallBack.getHippoRequest());
+    response.setServiceName(hippoClientBootstrap.getServiceName());
+    response.setError(true);
+    response.setThrowable(throwable);
+    return response;
+  }
+
+  /**
+   * 读空闲时发ping:只在写的连接(oneway/批量)一直不写空闲,也要靠ping的pong确认连接还活着
+   * 
+   * 超过heartbeatTimeout一直什么都没读到(连pong都没有)才关闭
+   */
   @Override
   public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
     super.userEventTriggered(ctx, evt);
-    if (evt instanceof IdleStateEvent) {
-      IdleStateEvent e = (IdleStateEvent) evt;
-      if (e.state() == IdleState.WRITER_IDLE) {
-        HippoRequest hippoRequest = new HippoRequest();
-        hippoRequest.setServiceName(serviceName);
-        hippoRequest.setRequestId("-99");
-        hippoRequest.setRequestType(HippoRequestEnum.PING.getType());
-        ctx.writeAndFlush(hippoRequest);
+    if (evt instanceof IdleStateEvent && ((IdleStateEvent) evt).state() == IdleState.READER_IDLE) {
+      if (heartbeatTimeoutNanos > 0 && System.nanoTime() - lastReadNanos >= heartbeatTimeoutNanos) {
+        // 连pong都收不到,连接已经不可用,关闭后走重连
+        LOGGER.warn("[{}]{}:{}心跳超时,关闭连接", hippoClientBootstrap.getServiceName(),
+            hippoClientBootstrap.getHost(), hippoClientBootstrap.getPort());
+        ctx.close();
+        return;
       }
+      ctx.writeAndFlush(HippoHeartbeat.ping(System.nanoTime()));
     }
   }
 
+  /**
+   * 连接断开:等待中的调用直接失败,交给HippoClientBootstrap去重连
+   */
   @Override
   public void channelInactive(ChannelHandlerContext ctx) throws Exception {
     super.channelInactive(ctx);
-    ctx.close();
-    if (eventLoopGroup != null) {
-      eventLoopGroup.shutdownGracefully();
+    List<HippoResultCallBack> pending = this.callBackMap.removeAll();
+    if (!pending.isEmpty()) {
+      // 一次断开只算一次失败,否则断开时等待的调用多了会直接把正常的endpoint摘掉
+      HippoOutlierDetector.INSTANCE.onFailure(hippoClientBootstrap,
+          hippoClientBootstrap.getStats().recordDisconnect());
     }
-    this.callBackMap.values().forEach(c -> {
-      HippoResponse response = new HippoResponse();
-      response.setError(true);
-      response.setThrowable(
-          new HippoServiceException("hippo server error trigger client channelInactive"));
-      c.signal(response);
+    pending.forEach(c -> {
+      c.recordConnectionLost();
+      back(c, errorResponse(c,
+          new HippoServiceException("hippo server error trigger client channelInactive")));
     });
-    callBackMap.clear();
-
-    HippoClientBootstrapMap.remove(serviceName, host, port);
+    hippoClientBootstrap.onDisconnected();
   }
 
   public void sendAsync(HippoResultCallBack hippoResultCallBack) {
-    callBackMap.put(hippoResultCallBack.getHippoRequest().getRequestId(), hippoResultCallBack);
-    this.channel.writeAndFlush(hippoResultCallBack.getHippoRequest());
+    HippoRequest hippoRequest = hippoResultCallBack.getHippoRequest();
+    hippoRequest.setRequestId(requestIdSequence.incrementAndGet());
+    // 服务端据此算出deadline,过了就不再执行.传剩下的时间,不是整个超时时间
+    hippoRequest.setTimeout(hippoResultCallBack.getRemainingTimeout());
+    hippoResultCallBack.setRequestHandler(this, hippoRequest.getRequestId());
+    callBackMap.put(hippoRequest.getRequestId(), hippoResultCallBack);
+    // 连接已经断开(正在重连)就直接失败,不用等到超时
+    Channel current = channel;
+    if (current == null || !current.isActive()) {
+      if (callBackMap.remove(hippoRequest.getRequestId()) != null) {
+        fail(hippoResultCallBack, unavailable());
+      }
+      return;
+    }
+    write(current, hippoRequest);
+  }
+
+  private HippoServiceUnavailableException unavailable() {
+    return new HippoServiceUnavailableException("[" + hippoClientBootstrap.getServiceName()
+        + "]连接不可用.host:" + hippoClientBootstrap.getHost() + ",port:"
+        + hippoClientBootstrap.getPort());
   }
 
+  /**
+   * 取消一个等待中的调用:从等待列表里移除(之后到达的返回直接丢弃),并给服务端发取消帧
+   * 
+   * @param requestId 要取消的调用的requestId
+   */
+  void cancel(long requestId) {
+    if (callBackMap.remove(requestId) == null) {
+      // 已经返回或者已经取消了
+      return;
+    }
+    Channel current = channel;
+    if (current != null && current.isActive()) {
+      current.writeAndFlush(new HippoCancel(requestId));
+    }
+  }
+
+  /**
+   * 连接不可用时和sendAsync一样直接返回失败,不往还没注册或者已经断开的连接里写
+   */
   public HippoResponse sendOneWay(HippoRequest hippoRequest) {
-    this.channel.writeAndFlush(hippoRequest);
-    return buildEmptyHippoResponse(hippoRequest);
+    hippoRequest.setRequestId(requestIdSequence.incrementAndGet());
+    HippoResponse hippoResponse = buildEmptyHippoResponse(hippoRequest);
+    Channel current = channel;
+    if (current == null || !current.isActive()) {
+      hippoResponse.setServiceName(hippoClientBootstrap.getServiceName());
+      hippoResponse.setError(true);
+      hippoResponse.setThrowable(unavailable());
+      return hippoResponse;
+    }
+    write(current, hippoRequest);
+    return hippoResponse;
+  }
+
+  private void write(Channel current, HippoRequest hippoRequest) {
+    if (batcher != null) {
+      batcher.add(current, hippoRequest);
+    } else {
+      current.writeAndFlush(hippoRequest);
+    }
   }
 
   public HippoResponse sendWithCallBack(HippoResultCallBack hippoResultCallBack) {
@@ -125,7 +260,8 @@ public class HippoRequestHandler extends SimpleChannelInboundHandler<HippoRespon
   private HippoResponse buildEmptyHippoResponse(HippoRequest hippoRequest) {
     HippoResponse hippoResponse = new HippoResponse();
     hippoResponse.setRequestId(hippoRequest.getRequestId());
-    hippoResponse.setChainId(hippoRequest.getChainId());
+    hippoResponse.setChainIdHigh(hippoRequest.getChainIdHigh());
+    hippoResponse.setChainIdLow(hippoRequest.getChainIdLow());
     hippoResponse.setChainOrder(hippoRequest.getChainOrder());
     return hippoResponse;
   }
@@ -134,10 +270,14 @@ public class HippoRequestHandler extends SimpleChannelInboundHandler<HippoRespon
   @Override
   public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
     LOGGER.error("netty client error", cause.fillInStackTrace());
-    HippoClientBootstrapMap.remove(serviceName, host, port);
+    // close会触发channelInactive,由channelInactive处理重连
     ctx.close();
-    if (eventLoopGroup != null) {
-      eventLoopGroup.shutdownGracefully();
+  }
+
+  void close() {
+    Channel current = channel;
+    if (current != null) {
+      current.close();
     }
   }
 
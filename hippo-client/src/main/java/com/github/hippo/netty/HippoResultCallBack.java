@@ -1,6 +1,7 @@
 package com.github.hippo.netty;
 
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
@@ -21,6 +22,15 @@ public class HippoResultCallBack {
   private int timeout;
   private HippoResponse hippoResponse;
   private HippoRequest hippoRequest;
+  // 用于endpoint统计,可以为null
+  private HippoClientBootstrap hippoClientBootstrap;
+  private long startNanos = System.nanoTime();
+  // 统计只记一次(超时后服务端的返回可能还会到)
+  private AtomicBoolean recorded = new AtomicBoolean(false);
+  // 发送这个请求的连接和requestId,取消时用;还没发出去时为null
+  // (重试时同一个HippoRequest会换一个requestId再发,所以这里单独保存)
+  private volatile HippoRequestHandler requestHandler;
+  private volatile long requestId;
 
 
 
@@ -28,15 +38,99 @@ public class HippoResultCallBack {
     return hippoRequest;
   }
 
+  /**
+   * @return 超时时间(毫秒),小于等于0表示用默认的1分钟
+   */
+  public int getTimeout() {
+    return timeout;
+  }
+
+  /**
+   * @return 从创建时算起还剩多少毫秒,没有设置超时时间返回0;已经超时返回1,让服务端按已过deadline处理
+   */
+  public int getRemainingTimeout() {
+    if (timeout <= 0) {
+      return 0;
+    }
+    long remaining = TimeUnit.NANOSECONDS.toMillis(waitNanos(timeout));
+    return (int) Math.max(remaining, 1);
+  }
+
+  private long waitNanos(int waitTime) {
+    return startNanos + TimeUnit.MILLISECONDS.toNanos(waitTime) - System.nanoTime();
+  }
+
   protected HippoResultCallBack(HippoRequest hippoRequest, int timeout) {
+    this(hippoRequest, timeout, null);
+  }
+
+  protected HippoResultCallBack(HippoRequest hippoRequest, int timeout,
+      HippoClientBootstrap hippoClientBootstrap) {
     this.hippoRequest = hippoRequest;
     this.timeout = timeout;
+    this.hippoClientBootstrap = hippoClientBootstrap;
+    if (hippoClientBootstrap != null) {
+      hippoClientBootstrap.getStats().onSend();
+    }
+  }
+
+  /**
+   * 收到服务端返回(包括业务异常)
+   */
+  void recordSuccess() {
+    if (hippoClientBootstrap != null && recorded.compareAndSet(false, true)) {
+      hippoClientBootstrap.getStats().recordSuccess(System.nanoTime() - startNanos);
+    }
+  }
+
+  /**
+   * 服务端过载拒绝
+   */
+  void recordBusy() {
+    if (hippoClientBootstrap != null && recorded.compareAndSet(false, true)) {
+      hippoClientBootstrap.getStats().recordBusy();
+    }
+  }
+
+  /**
+   * 超时或者连接失败
+   */
+  void recordFailure(boolean timeout) {
+    if (hippoClientBootstrap != null && recorded.compareAndSet(false, true)) {
+      int consecutiveFailures = hippoClientBootstrap.getStats().recordFailure(timeout,
+          System.nanoTime() - startNanos);
+      HippoOutlierDetector.INSTANCE.onFailure(hippoClientBootstrap, consecutiveFailures);
+    }
+  }
+
+  /**
+   * 连接断开,失败按连接记一次,见HippoEndpointStats.recordDisconnect
+   */
+  void recordConnectionLost() {
+    if (hippoClientBootstrap != null && recorded.compareAndSet(false, true)) {
+      hippoClientBootstrap.getStats().recordConnectionLost();
+    }
+  }
+
+  void setRequestHandler(HippoRequestHandler requestHandler, long requestId) {
+    this.requestId = requestId;
+    this.requestHandler = requestHandler;
+  }
+
+  /**
+   * 不再需要结果(超时或者已经从别的endpoint拿到了结果):不再等待返回,并通知服务端不用执行了
+   */
+  public void cancel() {
+    HippoRequestHandler handler = requestHandler;
+    if (handler != null) {
+      handler.cancel(requestId);
+    }
   }
 
   public void signal(HippoResponse hippoResponse) {
-    this.hippoResponse = hippoResponse;
     try {
       lock.lock();
+      this.hippoResponse = hippoResponse;
       finish.signal();
     } finally {
       lock.unlock();
@@ -51,7 +145,15 @@ public class HippoResultCallBack {
       if (waitTime <= 0) {
         waitTime = 60000;
       }
-      if (!finish.await(waitTime, TimeUnit.MILLISECONDS)) {
+      // 结果可能在调用getResult之前就已经signal了(比如连接不可用直接失败)
+      // 从创建时开始算,发送花的时间也算在超时时间里
+      long nanos = waitNanos(waitTime);
+      while (hippoResponse == null && nanos > 0) {
+        nanos = finish.awaitNanos(nanos);
+      }
+      if (hippoResponse == null) {
+        recordFailure(true);
+        cancel();
         hippoResponse = new HippoResponse();
         BeanUtils.copyProperties(hippoRequest, hippoResponse);
         hippoResponse.setError(true);
@@ -60,6 +162,8 @@ public class HippoResultCallBack {
             new HippoReadTimeoutException("[" + hippoRequest + "]超时,超时时间[" + waitTime + "]毫秒"));
       }
     } catch (InterruptedException e) {
+      // hystrix超时会中断调用线程
+      cancel();
       hippoResponse = new HippoResponse();
       BeanUtils.copyProperties(hippoRequest, hippoResponse);
       hippoResponse.setError(true);
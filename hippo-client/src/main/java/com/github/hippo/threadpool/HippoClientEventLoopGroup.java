@@ -0,0 +1,20 @@
+package com.github.hippo.threadpool;
+
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+/**
+ * client所有连接共用的io线程组,连接断开/重连都不再创建和关闭线程
+ * 
+ * @author sl
+ *
+ */
+public enum HippoClientEventLoopGroup {
+  INSTANCE;
+  private NioEventLoopGroup EVENTLOOPGROUP = new NioEventLoopGroup(
+      Runtime.getRuntime().availableProcessors(), new DefaultThreadFactory("hippo-client-io"));
+
+  public NioEventLoopGroup getGroup() {
+    return EVENTLOOPGROUP;
+  }
+}
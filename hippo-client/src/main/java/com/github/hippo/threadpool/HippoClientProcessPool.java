@@ -3,6 +3,8 @@ package com.github.hippo.threadpool;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
+import io.netty.util.concurrent.DefaultThreadFactory;
+
 /**
  * client thread pool
  * 
@@ -11,8 +13,8 @@ import java.util.concurrent.Executors;
  */
 public enum HippoClientProcessPool {
   INSTANCE;
-  private ExecutorService EXECUTORSERVICE =
-      Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors() * 3 + 2);
+  private ExecutorService EXECUTORSERVICE = Executors.newFixedThreadPool(
+      Runtime.getRuntime().availableProcessors() * 3 + 2, new DefaultThreadFactory("hippo-client"));
 
   public ExecutorService getPool() {
     return EXECUTORSERVICE;
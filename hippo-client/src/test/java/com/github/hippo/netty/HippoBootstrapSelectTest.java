@@ -0,0 +1,97 @@
+package com.github.hippo.netty;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.github.hippo.client.HippoClientConfig;
+import com.github.hippo.govern.ServiceMetadata;
+
+import junit.framework.TestCase;
+
+/**
+ * HippoClientBootstrapMap.getBootstrap的选择:调用次数最少,slow start按权重,排除和摘除
+ * 
+ * @author sl
+ *
+ */
+public class HippoBootstrapSelectTest extends TestCase {
+
+  private static final String SERVICE = "hippo-select-test";
+
+  private HippoTestEndpoints endpoints;
+
+  @Override
+  protected void setUp() {
+    endpoints = new HippoTestEndpoints(new HippoClientConfig());
+  }
+
+  @Override
+  protected void tearDown() {
+    endpoints.close();
+  }
+
+  /**
+   * 服务端已经启动了一半预热窗口,权重约0.5
+   */
+  private static Map<String, String> halfWarmed() {
+    Map<String, String> metadata = new HashMap<>();
+    metadata.put(ServiceMetadata.WARMUP_MILLIS, "600000");
+    metadata.put(ServiceMetadata.START_TIME, String.valueOf(System.currentTimeMillis() - 300000));
+    return metadata;
+  }
+
+  public void testLeastInvokedWhenNoneWarming() throws Exception {
+    List<HippoClientBootstrap> all = Arrays.asList(endpoints.connect(SERVICE),
+        endpoints.connect(SERVICE), endpoints.connect(SERVICE));
+    for (int i = 0; i < 300; i++) {
+      HippoClientBootstrapMap.getBootstrap(SERVICE);
+    }
+    for (HippoClientBootstrap bootstrap : all) {
+      assertEquals(100, bootstrap.getInvokeTimes().get());
+    }
+  }
+
+  public void testWarmingEndpointGetsWeightedShare() throws Exception {
+    for (int i = 0; i < 3; i++) {
+      endpoints.connect(SERVICE);
+    }
+    HippoClientBootstrap warming = endpoints.connect(SERVICE, halfWarmed());
+    double weight = warming.getWeight();
+    assertTrue(weight > 0.45 && weight < 0.55);
+    int picks = 7000;
+    int warmingPicks = 0;
+    for (int i = 0; i < picks; i++) {
+      if (HippoClientBootstrapMap.getBootstrap(SERVICE) == warming) {
+        warmingPicks++;
+      }
+    }
+    // 应得份额1/4的一半左右:0.5/3.5
+    double share = (double) warmingPicks / picks;
+    assertTrue("share=" + share, share > 0.09 && share < 0.2);
+  }
+
+  public void testExcludedSkipped() throws Exception {
+    HippoClientBootstrap first = endpoints.connect(SERVICE);
+    HippoClientBootstrap second = endpoints.connect(SERVICE);
+    HippoClientBootstrap third = endpoints.connect(SERVICE);
+    for (int i = 0; i < 10; i++) {
+      assertSame(third,
+          HippoClientBootstrapMap.getBootstrap(SERVICE, Arrays.asList(first, second)));
+    }
+    assertNull(HippoClientBootstrapMap.getBootstrap(SERVICE, Arrays.asList(first, second, third)));
+  }
+
+  public void testEjectedSkippedUnlessAllEjected() throws Exception {
+    HippoClientBootstrap healthy = endpoints.connect(SERVICE);
+    HippoClientBootstrap ejected = endpoints.connect(SERVICE);
+    ejected.getStats().eject(60000);
+    for (int i = 0; i < 10; i++) {
+      assertSame(healthy, HippoClientBootstrapMap.getBootstrap(SERVICE));
+    }
+    // 全部被摘除时忽略摘除状态
+    healthy.getStats().eject(60000);
+    assertNotNull(HippoClientBootstrapMap.getBootstrap(SERVICE));
+  }
+}
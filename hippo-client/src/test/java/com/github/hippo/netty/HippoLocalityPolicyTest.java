@@ -0,0 +1,106 @@
+package com.github.hippo.netty;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.github.hippo.client.HippoClientConfig;
+import com.github.hippo.govern.ServiceMetadata;
+
+import junit.framework.TestCase;
+
+/**
+ * 就近选择:同机 > 同zone > 其他,不健康或者满负载时溢出到下一级
+ * 
+ * @author sl
+ *
+ */
+public class HippoLocalityPolicyTest extends TestCase {
+
+  private static final String SERVICE = "hippo-locality-test";
+
+  private HippoClientConfig config;
+  private HippoTestEndpoints endpoints;
+
+  @Override
+  protected void setUp() {
+    config = new HippoClientConfig();
+    config.setLocalityEnabled(true);
+    config.setHostId("host-a");
+    config.setZone("zone-1");
+    config.setLocalityMinHealthyPercent(50);
+    HippoLocalityPolicy.INSTANCE.configure(config);
+    endpoints = new HippoTestEndpoints(config);
+  }
+
+  @Override
+  protected void tearDown() {
+    endpoints.close();
+    HippoClientConfig disabled = new HippoClientConfig();
+    disabled.setHostId("localhost");
+    HippoLocalityPolicy.INSTANCE.configure(disabled);
+  }
+
+  private static Map<String, String> at(String hostId, String zone) {
+    Map<String, String> metadata = new HashMap<>();
+    metadata.put(ServiceMetadata.HOST_ID, hostId);
+    metadata.put(ServiceMetadata.ZONE, zone);
+    return metadata;
+  }
+
+  private static List<HippoClientBootstrap> select(HippoClientBootstrap... bootstraps) {
+    return HippoLocalityPolicy.INSTANCE.select(Arrays.asList(bootstraps));
+  }
+
+  public void testLocalityOf() {
+    assertEquals(HippoLocalityPolicy.SAME_HOST,
+        HippoLocalityPolicy.INSTANCE.localityOf(at("host-a", "zone-2")));
+    assertEquals(HippoLocalityPolicy.SAME_ZONE,
+        HippoLocalityPolicy.INSTANCE.localityOf(at("host-b", "zone-1")));
+    assertEquals(HippoLocalityPolicy.REMOTE,
+        HippoLocalityPolicy.INSTANCE.localityOf(Collections.emptyMap()));
+  }
+
+  public void testPrefersSameHostThenZone() throws Exception {
+    HippoClientBootstrap sameHost = endpoints.connect(SERVICE, at("host-a", "zone-1"));
+    HippoClientBootstrap sameZone = endpoints.connect(SERVICE, at("host-b", "zone-1"));
+    HippoClientBootstrap remote = endpoints.connect(SERVICE, at("host-c", "zone-2"));
+    assertEquals(Collections.singletonList(sameHost), select(sameHost, sameZone, remote));
+    assertEquals(Collections.singletonList(sameZone), select(sameZone, remote));
+  }
+
+  public void testSpillsWhenTierUnhealthy() throws Exception {
+    HippoClientBootstrap sameHost = endpoints.connect(SERVICE, at("host-a", "zone-1"));
+    HippoClientBootstrap zone1 = endpoints.connect(SERVICE, at("host-b", "zone-1"));
+    HippoClientBootstrap zone2 = endpoints.connect(SERVICE, at("host-c", "zone-1"));
+    HippoClientBootstrap zone3 = endpoints.connect(SERVICE, at("host-d", "zone-1"));
+    HippoClientBootstrap remote = endpoints.connect(SERVICE, at("host-e", "zone-2"));
+    sameHost.getStats().eject(60000);
+    assertEquals(3, select(sameHost, zone1, zone2, zone3, remote).size());
+    // 同zone只剩1/3健康,低于minHealthyPercent,退回到所有健康节点
+    zone1.getStats().eject(60000);
+    zone2.getStats().eject(60000);
+    assertEquals(Arrays.asList(zone3, remote), select(sameHost, zone1, zone2, zone3, remote));
+  }
+
+  public void testSpillsWhenTierSaturated() throws Exception {
+    config.setLocalityMaxInFlight(2);
+    HippoClientBootstrap sameHost = endpoints.connect(SERVICE, at("host-a", "zone-1"));
+    HippoClientBootstrap sameZone = endpoints.connect(SERVICE, at("host-b", "zone-1"));
+    sameHost.getStats().onSend();
+    assertEquals(Collections.singletonList(sameHost), select(sameHost, sameZone));
+    sameHost.getStats().onSend();
+    assertEquals(Collections.singletonList(sameZone), select(sameHost, sameZone));
+  }
+
+  public void testDisabledUsesAllHealthy() throws Exception {
+    config.setLocalityEnabled(false);
+    HippoClientBootstrap sameHost = endpoints.connect(SERVICE, at("host-a", "zone-1"));
+    HippoClientBootstrap remote = endpoints.connect(SERVICE, at("host-c", "zone-2"));
+    remote.getInvokeTimes().set(-1);
+    // 按调用次数排序
+    assertEquals(Arrays.asList(remote, sameHost), select(sameHost, remote));
+  }
+}
@@ -0,0 +1,71 @@
+package com.github.hippo.netty;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import com.github.hippo.client.HippoClientConfig;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+
+/**
+ * 测试用的endpoint:每个endpoint在本机一个随机端口上监听,只接受连接不处理请求
+ * 
+ * @author sl
+ *
+ */
+final class HippoTestEndpoints {
+
+  private final NioEventLoopGroup group = new NioEventLoopGroup(1);
+  private final List<Channel> servers = new ArrayList<>();
+  private final List<HippoClientBootstrap> bootstraps = new ArrayList<>();
+  private final HippoClientConfig config;
+
+  HippoTestEndpoints(HippoClientConfig config) {
+    this.config = config;
+  }
+
+  HippoClientBootstrap connect(String serviceName) throws Exception {
+    return connect(serviceName, Collections.emptyMap());
+  }
+
+  /**
+   * 建立连接并放入HippoClientBootstrapMap
+   */
+  HippoClientBootstrap connect(String serviceName, Map<String, String> metadata)
+      throws Exception {
+    Channel server = new ServerBootstrap().group(group).channel(NioServerSocketChannel.class)
+        .childHandler(new ChannelInboundHandlerAdapter()).bind("127.0.0.1", 0).sync().channel();
+    servers.add(server);
+    int port = ((InetSocketAddress) server.localAddress()).getPort();
+    HippoClientBootstrap bootstrap =
+        new HippoClientBootstrap(serviceName, "127.0.0.1", port, config, false);
+    bootstrap.setMetadata(metadata);
+    bootstrap.connectAsync().sync();
+    // available在连接的listener里设置,可能比sync返回晚一点
+    long deadline = System.currentTimeMillis() + 5000;
+    while (!bootstrap.isAvailable() && System.currentTimeMillis() < deadline) {
+      Thread.sleep(1);
+    }
+    HippoClientBootstrapMap.put(serviceName, "127.0.0.1", port, bootstrap);
+    bootstraps.add(bootstrap);
+    return bootstrap;
+  }
+
+  void close() {
+    for (HippoClientBootstrap bootstrap : bootstraps) {
+      HippoClientBootstrapMap.remove(bootstrap.getServiceName(), bootstrap.getHost(),
+          bootstrap.getPort());
+    }
+    for (Channel server : servers) {
+      server.close().awaitUninterruptibly();
+    }
+    group.shutdownGracefully();
+  }
+}
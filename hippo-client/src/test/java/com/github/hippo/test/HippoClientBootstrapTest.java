@@ -132,7 +132,7 @@ public class HippoClientBootstrapTest {
 
           HippoRequest request = new HippoRequest();
           request.setServiceName("testClient111");
-          String requestId = "12345-" + new Random().nextInt(1000);
+          long requestId = 12345000 + new Random().nextInt(1000);
           request.setRequestId(requestId);
           HippoResultCallBackTest sendAsync = bootstrap.sendAsync(request);
           System.out.println(
@@ -172,7 +172,7 @@ public class HippoClientBootstrapTest {
               HippoClientBootstrapTest.getBootstrap("testClient111", 1, true, null);
           HippoRequest request = new HippoRequest();
           request.setServiceName("testClient111");
-          String requestId = "56789-" + new Random().nextInt(1000);
+          long requestId = 56789000 + new Random().nextInt(1000);
           request.setRequestId(requestId);
           HippoResultCallBackTest sendAsync = bootstrap3.sendAsync(request);
           System.out.println(
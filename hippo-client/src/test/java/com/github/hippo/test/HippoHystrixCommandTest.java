@@ -1,6 +1,5 @@
 package com.github.hippo.test;
 
-import java.util.UUID;
 import java.util.concurrent.TimeUnit;
 
 import com.github.hippo.bean.HippoRequest;
@@ -60,8 +59,8 @@ public class HippoHystrixCommandTest {
 
   private HippoRequest buildHippoRequest() {
     HippoRequest request = new HippoRequest();
-    request.setRequestId(UUID.randomUUID().toString());
-    request.setChainId(ChainThreadLocal.INSTANCE.getChainId());
+    request.setChainIdHigh(ChainThreadLocal.INSTANCE.getChainIdHigh());
+    request.setChainIdLow(ChainThreadLocal.INSTANCE.getChainIdLow());
     request.setChainOrder(ChainThreadLocal.INSTANCE.getChainOrder());
     request.setRequestType(HippoRequestEnum.RPC.getType());
     request.setClassName("com.holyshared.issue.service.PublishService");
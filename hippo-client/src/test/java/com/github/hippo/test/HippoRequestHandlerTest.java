@@ -4,9 +4,8 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
-import com.github.hippo.bean.HippoRequest;
+import com.github.hippo.bean.HippoHeartbeat;
 import com.github.hippo.bean.HippoResponse;
-import com.github.hippo.enums.HippoRequestEnum;
 
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandlerContext;
@@ -17,7 +16,7 @@ import io.netty.handler.timeout.IdleStateEvent;
 
 public class HippoRequestHandlerTest extends SimpleChannelInboundHandler<HippoResponse> {
 
-  private volatile ConcurrentHashMap<String, HippoResultCallBackTest> callBackMap =
+  private volatile ConcurrentHashMap<Long, HippoResultCallBackTest> callBackMap =
       new ConcurrentHashMap<>();
   private String serviceName;
   private EventLoopGroup eventLoopGroup;
@@ -47,7 +46,7 @@ public class HippoRequestHandlerTest extends SimpleChannelInboundHandler<HippoRe
   @Override
   protected void channelRead0(ChannelHandlerContext arg0, HippoResponse response) throws Exception {
     // ping不需要记录到返回结果MAP里
-    if (response != null && !("-99").equals(response.getRequestId())) {
+    if (response != null) {
       executorService.execute(() -> {
         HippoResultCallBackTest hippoResultCallBack = callBackMap.remove(response.getRequestId());
         hippoResultCallBack.signal(response);
@@ -61,11 +60,7 @@ public class HippoRequestHandlerTest extends SimpleChannelInboundHandler<HippoRe
     if (evt instanceof IdleStateEvent) {
       IdleStateEvent e = (IdleStateEvent) evt;
       if (e.state() == IdleState.WRITER_IDLE) {
-        HippoRequest hippoRequest = new HippoRequest();
-        hippoRequest.setServiceName(serviceName);
-        hippoRequest.setRequestId("-99");
-        hippoRequest.setRequestType(HippoRequestEnum.PING.getType());
-        ctx.writeAndFlush(hippoRequest);
+        ctx.writeAndFlush(HippoHeartbeat.INSTANCE);
       }
     }
   }
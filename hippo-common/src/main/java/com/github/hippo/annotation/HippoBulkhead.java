@@ -0,0 +1,42 @@
+package com.github.hippo.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 声明在@HippoServiceImpl实现类或者它的方法上,被声明的方法在独立的业务线程池(舱壁)里执行,
+ * 慢方法占满自己的线程池也不会拖慢其他方法
+ * 
+ * 方法上的优先于类上的;同名的舱壁共用一个线程池.也可以不加注解,用hippo.server.bulkhead.routes配置
+ * 
+ * @author sl
+ *
+ */
+@Target({ElementType.TYPE, ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface HippoBulkhead {
+  /**
+   * 舱壁名
+   * 
+   * @return 舱壁名
+   */
+  String value();
+
+  /**
+   * 线程数(最大并发数),默认0表示cpu核数;hippo.server.bulkhead.pools里配置了的以配置为准
+   * 
+   * @return 线程数
+   */
+  int threads() default 0;
+
+  /**
+   * 队列长度,默认0表示和默认线程池一样(hippo.server.queue.capacity);hippo.server.bulkhead.pools里配置了的以配置为准
+   * 
+   * @return 队列长度
+   */
+  int queueCapacity() default 0;
+}
@@ -7,6 +7,8 @@ import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
 
+import com.github.hippo.enums.HippoPriorityEnum;
+
 /**
  * hippo client
  * 
@@ -70,4 +72,20 @@ public @interface HippoClient {
    */
   Class<?> downgradeStrategy() default Void.class;
 
+  /**
+   * 是否合并相同的并发调用 默认不合并
+   * 相同方法+相同参数的同步调用正在进行时,后来的调用直接等待它的结果,不再发送请求
+   * 
+   * @return
+   */
+  boolean isCoalescing() default false;
+
+  /**
+   * 请求优先级,服务端排队时优先执行高优先级的请求 默认NORMAL
+   * 当前线程上有优先级(HippoPriorityScope,或者正在处理的请求不是NORMAL)时以线程上的为准
+   * 
+   * @return
+   */
+  HippoPriorityEnum priority() default HippoPriorityEnum.NORMAL;
+
 }
@@ -0,0 +1,28 @@
+package com.github.hippo.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 声明在@HippoServiceImpl实现类的方法上,表示这个方法不会阻塞(纯内存计算,没有io,锁等待,远程调用)
+ * 
+ * 服务端直接在netty io线程上执行并立即写回,省掉进出业务线程池的两次线程切换;同时声明了@HippoBulkhead的以这个为准.
+ * io线程被阻塞会拖慢这个线程上的所有连接,执行超过budgetMicros时会打印告警
+ * 
+ * @author sl
+ *
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface HippoNonBlocking {
+  /**
+   * 执行时间预算,默认0表示用hippo.server.nonBlocking.budgetMicros
+   * 
+   * @return 微秒
+   */
+  long budgetMicros() default 0;
+}
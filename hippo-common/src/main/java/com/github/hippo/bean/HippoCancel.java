@@ -0,0 +1,27 @@
+package com.github.hippo.bean;
+
+/**
+ * 客户端取消请求帧:调用超时或者不再需要结果时发给服务端,不走序列化,帧体只有一个long requestId
+ * 
+ * 服务端还没执行的请求直接丢弃,正在执行的请求通过取消标记通知业务代码,两种情况都不再返回响应
+ * 
+ * @author sl
+ *
+ */
+public final class HippoCancel {
+
+  private final long requestId;
+
+  public HippoCancel(long requestId) {
+    this.requestId = requestId;
+  }
+
+  public long getRequestId() {
+    return requestId;
+  }
+
+  @Override
+  public String toString() {
+    return "HippoCancel [requestId=" + requestId + "]";
+  }
+}
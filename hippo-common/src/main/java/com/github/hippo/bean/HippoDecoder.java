@@ -2,6 +2,7 @@ package com.github.hippo.bean;
 
 import java.util.List;
 
+import com.github.hippo.enums.HippoFrameEnum;
 import com.github.hippo.util.SerializationUtils;
 
 import io.netty.buffer.ByteBuf;
@@ -29,15 +30,65 @@ public class HippoDecoder extends ByteToMessageDecoder {
     }
     in.markReaderIndex();
     int dataLength = in.readInt();
-    if (dataLength < 0) {
+    if (dataLength < 1) {
+      in.skipBytes(in.readableBytes());
       ctx.close();
+      return;
     }
     if (in.readableBytes() < dataLength) {
       in.resetReaderIndex();
       return;
     }
-    byte[] data = new byte[dataLength];
+    HippoFrameEnum frameEnum = HippoFrameEnum.getByType(in.readByte());
+    if (frameEnum == HippoFrameEnum.HEARTBEAT || frameEnum == HippoFrameEnum.HEARTBEAT_ACK) {
+      // 帧体不足8字节时时间戳按0处理(不计算RTT)
+      long timestamp = 0;
+      int bodyLength = dataLength - 1;
+      if (bodyLength >= 8) {
+        timestamp = in.readLong();
+        bodyLength -= 8;
+      }
+      in.skipBytes(bodyLength);
+      out.add(frameEnum == HippoFrameEnum.HEARTBEAT ? HippoHeartbeat.ping(timestamp)
+          : HippoHeartbeat.pong(timestamp));
+      return;
+    }
+    if (frameEnum == HippoFrameEnum.CANCEL) {
+      int bodyLength = dataLength - 1;
+      if (bodyLength < 8) {
+        in.skipBytes(bodyLength);
+        return;
+      }
+      out.add(new HippoCancel(in.readLong()));
+      in.skipBytes(bodyLength - 8);
+      return;
+    }
+    if (frameEnum == HippoFrameEnum.GOAWAY) {
+      in.skipBytes(dataLength - 1);
+      out.add(HippoGoAway.INSTANCE);
+      return;
+    }
+    Class<?> messageClass = messageClass(frameEnum);
+    if (messageClass == null) {
+      // 不认识的帧直接跳过,兼容后续新增的帧类型
+      in.skipBytes(dataLength - 1);
+      return;
+    }
+    byte[] data = new byte[dataLength - 1];
     in.readBytes(data);
-    out.add(SerializationUtils.deserialize(data, genericClass));
+    out.add(SerializationUtils.deserialize(data, messageClass));
+  }
+
+  private Class<?> messageClass(HippoFrameEnum frameEnum) {
+    if (frameEnum == HippoFrameEnum.MESSAGE) {
+      return genericClass;
+    }
+    if (frameEnum == HippoFrameEnum.REQUEST_BATCH) {
+      return HippoRequestBatch.class;
+    }
+    if (frameEnum == HippoFrameEnum.RESPONSE_BATCH) {
+      return HippoResponseBatch.class;
+    }
+    return null;
   }
 }
@@ -1,5 +1,6 @@
 package com.github.hippo.bean;
 
+import com.github.hippo.enums.HippoFrameEnum;
 import com.github.hippo.util.SerializationUtils;
 
 import io.netty.buffer.ByteBuf;
@@ -9,6 +10,8 @@ import io.netty.handler.codec.MessageToByteEncoder;
 /**
  * netty msg encodeer
  * 
+ * 帧格式:[int 帧长度][byte 帧类型][body],帧长度包含帧类型的1个字节
+ * 
  * @author sl
  *
  */
@@ -22,10 +25,32 @@ public class HippoEncoder extends MessageToByteEncoder<Object> {
 
   @Override
   public void encode(ChannelHandlerContext ctx, Object in, ByteBuf out) throws Exception {
-    if (genericClass.isInstance(in)) {
-      byte[] data = SerializationUtils.serialize(in);
-      out.writeInt(data.length);
-      out.writeBytes(data);
+    if (in instanceof HippoHeartbeat) {
+      HippoHeartbeat heartbeat = (HippoHeartbeat) in;
+      out.writeInt(9);
+      out.writeByte(heartbeat.isPong() ? HippoFrameEnum.HEARTBEAT_ACK.getType()
+          : HippoFrameEnum.HEARTBEAT.getType());
+      out.writeLong(heartbeat.getTimestamp());
+    } else if (in instanceof HippoCancel) {
+      out.writeInt(9);
+      out.writeByte(HippoFrameEnum.CANCEL.getType());
+      out.writeLong(((HippoCancel) in).getRequestId());
+    } else if (in instanceof HippoGoAway) {
+      out.writeInt(1);
+      out.writeByte(HippoFrameEnum.GOAWAY.getType());
+    } else if (genericClass.isInstance(in)) {
+      writeFrame(HippoFrameEnum.MESSAGE, in, out);
+    } else if (in instanceof HippoRequestBatch) {
+      writeFrame(HippoFrameEnum.REQUEST_BATCH, in, out);
+    } else if (in instanceof HippoResponseBatch) {
+      writeFrame(HippoFrameEnum.RESPONSE_BATCH, in, out);
     }
   }
+
+  private void writeFrame(HippoFrameEnum frameEnum, Object in, ByteBuf out) {
+    byte[] data = SerializationUtils.serialize(in);
+    out.writeInt(data.length + 1);
+    out.writeByte(frameEnum.getType());
+    out.writeBytes(data);
+  }
 }
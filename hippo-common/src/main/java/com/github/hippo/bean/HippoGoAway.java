@@ -0,0 +1,21 @@
+package com.github.hippo.bean;
+
+/**
+ * 服务端下线通知帧,客户端收到后不再往这个连接发新请求,已发出的请求照常返回
+ * 
+ * 和心跳帧一样没有body,只有帧类型
+ * 
+ * @author sl
+ *
+ */
+public final class HippoGoAway {
+
+  public static final HippoGoAway INSTANCE = new HippoGoAway();
+
+  private HippoGoAway() {}
+
+  @Override
+  public String toString() {
+    return "HippoGoAway";
+  }
+}
@@ -0,0 +1,43 @@
+package com.github.hippo.bean;
+
+/**
+ * 心跳帧(ping/pong),不走序列化,帧体只有一个long时间戳
+ * 
+ * 客户端发ping带上System.nanoTime(),服务端在io线程原样带回pong,客户端据此算RTT
+ * 
+ * @author sl
+ *
+ */
+public final class HippoHeartbeat {
+
+  public static final HippoHeartbeat INSTANCE = new HippoHeartbeat(0, false);
+
+  private final long timestamp;
+  private final boolean pong;
+
+  private HippoHeartbeat(long timestamp, boolean pong) {
+    this.timestamp = timestamp;
+    this.pong = pong;
+  }
+
+  public static HippoHeartbeat ping(long timestamp) {
+    return new HippoHeartbeat(timestamp, false);
+  }
+
+  public static HippoHeartbeat pong(long timestamp) {
+    return new HippoHeartbeat(timestamp, true);
+  }
+
+  public long getTimestamp() {
+    return timestamp;
+  }
+
+  public boolean isPong() {
+    return pong;
+  }
+
+  @Override
+  public String toString() {
+    return "HippoHeartbeat [timestamp=" + timestamp + ", pong=" + pong + "]";
+  }
+}
@@ -20,8 +20,9 @@ public class HippoRequest implements Serializable {
    */
   private static final long serialVersionUID = 8703973176164750873L;
   private String serviceName;
-  private String requestId;
-  private String chainId;
+  private long requestId;// 连接内自增序号,发送时由HippoRequestHandler分配
+  private long chainIdHigh;
+  private long chainIdLow;
   private int chainOrder;
   private Integer requestType = HippoRequestEnum.RPC.getType();// default
   private String className;
@@ -30,7 +31,10 @@ public class HippoRequest implements Serializable {
   private Object[] parameters;
   private transient CallType callType = CallType.SYNC;
   private transient ICallBack iCallBack;
-  private transient int timeout;
+  // 剩余的超时时间(毫秒),发送时由HippoRequestHandler设置,服务端据此算出deadline;0表示没有限制
+  private int timeout;
+  // 优先级,见HippoPriorityEnum;老版本客户端不传,为0即NORMAL
+  private int priority;
 
 
 
@@ -51,20 +55,28 @@ public class HippoRequest implements Serializable {
     this.serviceName = serviceName;
   }
 
-  public String getRequestId() {
+  public long getRequestId() {
     return requestId;
   }
 
-  public void setRequestId(String requestId) {
+  public void setRequestId(long requestId) {
     this.requestId = requestId;
   }
 
-  public String getChainId() {
-    return chainId;
+  public long getChainIdHigh() {
+    return chainIdHigh;
   }
 
-  public void setChainId(String chainId) {
-    this.chainId = chainId;
+  public void setChainIdHigh(long chainIdHigh) {
+    this.chainIdHigh = chainIdHigh;
+  }
+
+  public long getChainIdLow() {
+    return chainIdLow;
+  }
+
+  public void setChainIdLow(long chainIdLow) {
+    this.chainIdLow = chainIdLow;
   }
 
   public int getChainOrder() {
@@ -132,4 +144,12 @@ public class HippoRequest implements Serializable {
   public void setTimeout(int timeout) {
     this.timeout = timeout;
   }
+
+  public int getPriority() {
+    return priority;
+  }
+
+  public void setPriority(int priority) {
+    this.priority = priority;
+  }
 }
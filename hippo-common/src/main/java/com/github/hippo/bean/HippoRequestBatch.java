@@ -0,0 +1,30 @@
+package com.github.hippo.bean;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * 批量请求包装类,一个帧里带多个HippoRequest
+ * 
+ * @author sl
+ *
+ */
+public class HippoRequestBatch implements Serializable {
+
+  private static final long serialVersionUID = -4316539129467284361L;
+  private List<HippoRequest> requests;
+
+  public HippoRequestBatch() {}
+
+  public HippoRequestBatch(List<HippoRequest> requests) {
+    this.requests = requests;
+  }
+
+  public List<HippoRequest> getRequests() {
+    return requests;
+  }
+
+  public void setRequests(List<HippoRequest> requests) {
+    this.requests = requests;
+  }
+}
@@ -2,6 +2,8 @@ package com.github.hippo.bean;
 
 import java.io.Serializable;
 
+import com.github.hippo.chain.ChainId;
+
 
 /**
  * 
@@ -15,9 +17,10 @@ public class HippoResponse implements Serializable {
    * 
    */
   private static final long serialVersionUID = -2553246569725890161L;
-  private String requestId;
+  private long requestId;
   private String serviceName;
-  private String chainId;
+  private long chainIdHigh;
+  private long chainIdLow;
   private int chainOrder;
   private Object result;
   private Throwable throwable;
@@ -31,21 +34,29 @@ public class HippoResponse implements Serializable {
     this.serviceName = serviceName;
   }
 
-  public String getRequestId() {
+  public long getRequestId() {
     return requestId;
   }
 
-  public void setRequestId(String requestId) {
+  public void setRequestId(long requestId) {
     this.requestId = requestId;
   }
 
 
-  public String getChainId() {
-    return chainId;
+  public long getChainIdHigh() {
+    return chainIdHigh;
+  }
+
+  public void setChainIdHigh(long chainIdHigh) {
+    this.chainIdHigh = chainIdHigh;
+  }
+
+  public long getChainIdLow() {
+    return chainIdLow;
   }
 
-  public void setChainId(String chainId) {
-    this.chainId = chainId;
+  public void setChainIdLow(long chainIdLow) {
+    this.chainIdLow = chainIdLow;
   }
 
   public int getChainOrder() {
@@ -84,15 +95,13 @@ public class HippoResponse implements Serializable {
   public String toString() {
     String logResult = "null";
     if (result != null) {
-      int index = result.toString().length();
-      if (index > 50) {
-        logResult = result.toString().substring(0, 50);
-      } else {
-        logResult = result.toString();
+      logResult = result.toString();
+      if (logResult.length() > 50) {
+        logResult = logResult.substring(0, 50);
       }
     }
     return "HippoResponse [requestId=" + requestId + ", serviceName=" + serviceName + ", chainId="
-        + chainId + ", chainOrder=" + chainOrder + ", result=" + logResult + ", throwable="
+        + ChainId.toString(chainIdHigh, chainIdLow) + ", chainOrder=" + chainOrder + ", result=" + logResult + ", throwable="
         + throwable + ", isError=" + isError + "]";
   }
 
@@ -0,0 +1,30 @@
+package com.github.hippo.bean;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * 批量响应包装类,一个帧里带多个HippoResponse
+ * 
+ * @author sl
+ *
+ */
+public class HippoResponseBatch implements Serializable {
+
+  private static final long serialVersionUID = 7120863946254823917L;
+  private List<HippoResponse> responses;
+
+  public HippoResponseBatch() {}
+
+  public HippoResponseBatch(List<HippoResponse> responses) {
+    this.responses = responses;
+  }
+
+  public List<HippoResponse> getResponses() {
+    return responses;
+  }
+
+  public void setResponses(List<HippoResponse> responses) {
+    this.responses = responses;
+  }
+}
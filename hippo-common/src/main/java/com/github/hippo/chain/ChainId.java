@@ -0,0 +1,55 @@
+package com.github.hippo.chain;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 128位调用链id,高低两个long,不再用UUID(SecureRandom有锁竞争,还要生成36位字符串)
+ * 
+ * 高64位:毫秒时间戳左移16位+16位随机数;低64位:随机数
+ * 
+ * @author sl
+ *
+ */
+public final class ChainId {
+
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+  private ChainId() {}
+
+  public static long nextHigh() {
+    return (System.currentTimeMillis() << 16) | (ThreadLocalRandom.current().nextInt() & 0xFFFF);
+  }
+
+  public static long nextLow() {
+    return ThreadLocalRandom.current().nextLong();
+  }
+
+  /**
+   * 高低位都是0表示没有chainId
+   * 
+   * @param high 高64位
+   * @param low 低64位
+   * @return 是否是有效的chainId
+   */
+  public static boolean isValid(long high, long low) {
+    return high != 0 || low != 0;
+  }
+
+  /**
+   * 32位16进制字符串,日志打印用
+   * 
+   * @param high 高64位
+   * @param low 低64位
+   * @return chainId字符串
+   */
+  public static String toString(long high, long low) {
+    char[] chars = new char[32];
+    for (int i = 15; i >= 0; i--) {
+      chars[i] = HEX[(int) (high & 0xF)];
+      high >>>= 4;
+      chars[i + 16] = HEX[(int) (low & 0xF)];
+      low >>>= 4;
+    }
+    return new String(chars);
+  }
+}
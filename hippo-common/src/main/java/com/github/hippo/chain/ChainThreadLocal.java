@@ -1,40 +1,74 @@
 package com.github.hippo.chain;
 
-import java.util.Objects;
-import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
-import org.apache.commons.lang3.StringUtils;
+import com.github.hippo.enums.HippoPriorityEnum;
+
+import io.netty.util.concurrent.FastThreadLocal;
 
 /**
  * Created by hanruofei on 16/8/30. 串起rpc调用链
+ * 
+ * 使用netty的FastThreadLocal,在netty线程(FastThreadLocalThread)里是数组下标访问,普通线程自动退化成ThreadLocal
+ * 
+ * 服务端处理请求期间还保存了调用方的deadline,这期间发起的下游调用用剩下的时间作为超时时间;
+ * 以及请求的取消标记,客户端取消请求后业务代码可以通过isCancelled提前结束
+ * 
+ * 还保存了当前线程上发起调用的优先级(HippoPriorityScope或者服务端正在处理的请求的优先级)
  */
 public enum ChainThreadLocal {
   INSTANCE;
 
   /**
-   * 存放chainId
+   * 存放chainId和chainOrder(调用链顺序),clearTL只重置字段不删除,避免每个请求都new一次
    */
-  private ThreadLocal<String> chainId = new ThreadLocal<>();
+  private FastThreadLocal<ChainContext> context = new FastThreadLocal<ChainContext>() {
+    @Override
+    protected ChainContext initialValue() {
+      return new ChainContext();
+    }
+  };
+
+  public void clearTL() {
+    ChainContext chainContext = context.get();
+    chainContext.clear();
+    chainContext.deadlineNanos = 0;
+    chainContext.cancelToken = null;
+    chainContext.priority = null;
+  }
+
   /**
-   * 存放chainOrder (调用链顺序)
+   * 只重置chainId和chainOrder,保留deadline,取消标记和优先级(同一个请求里的多次下游调用都要受deadline约束)
    */
-  private ThreadLocal<Integer> chainOrder = new ThreadLocal<>();
+  public void clearChain() {
+    context.get().clear();
+  }
 
-  public void clearTL() {
-    chainId.remove();
-    chainOrder.remove();
+  /**
+   * 获取chainId高64位,没有则生成
+   * 
+   * @return chainId高64位
+   */
+  public long getChainIdHigh() {
+    return context.get().ensureChainId().chainIdHigh;
   }
 
   /**
-   * 获取ThreadLocal中的chainId value
+   * 获取chainId低64位,没有则生成
    * 
-   * @return chainId
+   * @return chainId低64位
    */
-  public String getChainId() {
-    if (StringUtils.isBlank(chainId.get())) {
-      chainId.set(UUID.randomUUID().toString());
-    }
-    return chainId.get();
+  public long getChainIdLow() {
+    return context.get().ensureChainId().chainIdLow;
+  }
+
+  /**
+   * 只读取当前chainId字符串,不会生成chainId(日志用)
+   * 
+   * @return chainId,没有则返回空字符串
+   */
+  public String peekChainId() {
+    return context.get().chainIdString();
   }
 
   /**
@@ -43,20 +77,18 @@ public enum ChainThreadLocal {
    * @return chainOrder
    */
   public int getChainOrder() {
-    if (Objects.isNull(chainOrder.get())) {
-      chainOrder.set(1);
-    }
-    return chainOrder.get();
+    return context.get().chainOrder;
   }
 
 
   /**
    * 插入ThreadLocal中的value
    * 
-   * @param chainId chainId
+   * @param chainIdHigh chainId高64位
+   * @param chainIdLow chainId低64位
    */
-  public void setChainId(String chainId) {
-    this.chainId.set(chainId);
+  public void setChainId(long chainIdHigh, long chainIdLow) {
+    context.get().setChainId(chainIdHigh, chainIdLow);
   }
 
   /**
@@ -65,7 +97,123 @@ public enum ChainThreadLocal {
    * @param co chainOrder
    */
   public void incChainOrder(int co) {
-    this.chainOrder.set(co + 1);
+    context.get().chainOrder = co + 1;
+  }
+
+  /**
+   * 设置当前请求的deadline
+   * 
+   * @param deadlineNanos System.nanoTime()时间,0表示没有deadline
+   */
+  public void setDeadline(long deadlineNanos) {
+    context.get().deadlineNanos = deadlineNanos;
+  }
+
+  /**
+   * @return 当前请求的deadline(System.nanoTime()时间),0表示没有deadline
+   */
+  public long getDeadlineNanos() {
+    return context.get().deadlineNanos;
+  }
+
+  /**
+   * @return 是否有deadline并且已经过了
+   */
+  public boolean isDeadlineExceeded() {
+    long deadlineNanos = context.get().deadlineNanos;
+    return deadlineNanos != 0 && System.nanoTime() - deadlineNanos >= 0;
+  }
+
+  /**
+   * 设置当前请求的取消标记
+   * 
+   * @param cancelToken 取消标记,null表示不能取消
+   */
+  public void setCancelToken(HippoCancelToken cancelToken) {
+    context.get().cancelToken = cancelToken;
+  }
+
+  /**
+   * 长时间执行的业务代码可以定期检查,客户端已经取消时提前结束
+   * 
+   * @return 当前请求是否已经被客户端取消
+   */
+  public boolean isCancelled() {
+    HippoCancelToken cancelToken = context.get().cancelToken;
+    return cancelToken != null && cancelToken.isCancelled();
+  }
+
+  /**
+   * 设置当前线程上发起调用的优先级
+   * 
+   * @param priority 优先级,null表示使用@HippoClient上配置的优先级
+   */
+  public void setPriority(HippoPriorityEnum priority) {
+    context.get().priority = priority;
+  }
+
+  /**
+   * @return 当前线程上发起调用的优先级,没有设置返回null
+   */
+  public HippoPriorityEnum getPriority() {
+    return context.get().priority;
   }
 
+  /**
+   * 下游调用实际使用的超时时间:有deadline时取timeout和剩余时间中小的那个
+   * 
+   * @param timeout 调用方配置的超时时间(毫秒),小于等于0表示没有配置
+   * @return 毫秒,deadline已过时返回0
+   */
+  public int remainingTimeout(int timeout) {
+    long deadlineNanos = context.get().deadlineNanos;
+    if (deadlineNanos == 0) {
+      return timeout;
+    }
+    long remainingNanos = deadlineNanos - System.nanoTime();
+    if (remainingNanos <= 0) {
+      return 0;
+    }
+    // 向上取整,还剩不到1毫秒时不能变成0
+    long remaining = TimeUnit.NANOSECONDS.toMillis(remainingNanos) + 1;
+    return (int) Math.min(timeout > 0 ? timeout : Integer.MAX_VALUE, remaining);
+  }
+
+  private static final class ChainContext {
+    private long deadlineNanos;
+    private HippoCancelToken cancelToken;
+    private HippoPriorityEnum priority;
+    private long chainIdHigh;
+    private long chainIdLow;
+    private String chainIdString;
+    private int chainOrder = 1;
+
+    private ChainContext ensureChainId() {
+      if (!ChainId.isValid(chainIdHigh, chainIdLow)) {
+        setChainId(ChainId.nextHigh(), ChainId.nextLow());
+      }
+      return this;
+    }
+
+    private void setChainId(long chainIdHigh, long chainIdLow) {
+      this.chainIdHigh = chainIdHigh;
+      this.chainIdLow = chainIdLow;
+      this.chainIdString = null;
+    }
+
+    private String chainIdString() {
+      if (!ChainId.isValid(chainIdHigh, chainIdLow)) {
+        return "";
+      }
+      if (chainIdString == null) {
+        chainIdString = ChainId.toString(chainIdHigh, chainIdLow);
+      }
+      return chainIdString;
+    }
+
+    private void clear() {
+      setChainId(0, 0);
+      chainOrder = 1;
+    }
+  }
 }
@@ -0,0 +1,59 @@
+package com.github.hippo.chain;
+
+/**
+ * 服务端一个请求的取消标记,客户端发来取消帧时置位
+ * 
+ * 业务代码通过ChainThreadLocal.INSTANCE.isCancelled()检查;开启interruptible时还会中断正在执行这个请求的业务线程,
+ * 请求执行完后中断状态会被清掉,不会影响线程池里的下一个请求
+ * 
+ * @author sl
+ *
+ */
+public final class HippoCancelToken {
+
+  private final boolean interruptible;
+  private volatile boolean cancelled;
+  // 正在执行这个请求的线程,没有在执行时为null
+  private Thread runner;
+
+  /**
+   * @param interruptible 取消时是否中断正在执行的线程
+   */
+  public HippoCancelToken(boolean interruptible) {
+    this.interruptible = interruptible;
+  }
+
+  public boolean isCancelled() {
+    return cancelled;
+  }
+
+  public synchronized void cancel() {
+    if (cancelled) {
+      return;
+    }
+    cancelled = true;
+    if (interruptible && runner != null) {
+      runner.interrupt();
+    }
+  }
+
+  /**
+   * 开始在当前线程上执行请求
+   */
+  public synchronized void bind() {
+    runner = Thread.currentThread();
+  }
+
+  /**
+   * 请求执行完,之后的取消不会再中断这个线程
+   */
+  public void unbind() {
+    synchronized (this) {
+      runner = null;
+    }
+    if (interruptible && cancelled) {
+      // 清掉cancel设置的中断状态
+      Thread.interrupted();
+    }
+  }
+}
@@ -0,0 +1,37 @@
+package com.github.hippo.chain;
+
+import com.github.hippo.enums.HippoPriorityEnum;
+
+/**
+ * 在一段代码里发起的hippo调用都使用指定的优先级,优先于@HippoClient上配置的优先级
+ * 
+ * <pre>
+ * try (HippoPriorityScope scope = HippoPriorityScope.open(HippoPriorityEnum.LOW)) {
+ *   reportService.export(...);
+ * }
+ * </pre>
+ * 
+ * 可以嵌套,close时恢复成open之前的优先级
+ * 
+ * @author sl
+ *
+ */
+public final class HippoPriorityScope implements AutoCloseable {
+
+  private final HippoPriorityEnum previous;
+
+  private HippoPriorityScope(HippoPriorityEnum previous) {
+    this.previous = previous;
+  }
+
+  public static HippoPriorityScope open(HippoPriorityEnum priority) {
+    HippoPriorityScope scope = new HippoPriorityScope(ChainThreadLocal.INSTANCE.getPriority());
+    ChainThreadLocal.INSTANCE.setPriority(priority);
+    return scope;
+  }
+
+  @Override
+  public void close() {
+    ChainThreadLocal.INSTANCE.setPriority(previous);
+  }
+}
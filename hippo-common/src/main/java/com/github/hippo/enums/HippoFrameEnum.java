@@ -0,0 +1,38 @@
+package com.github.hippo.enums;
+
+/**
+ * 传输帧类型枚举
+ * 
+ * @author sl
+ *
+ */
+public enum HippoFrameEnum {
+  MESSAGE((byte) 0, "请求/响应"), HEARTBEAT((byte) 1, "长连接心跳ping"), REQUEST_BATCH((byte) 2,
+      "批量请求"), RESPONSE_BATCH((byte) 3, "批量响应"), GOAWAY((byte) 4,
+          "服务端下线通知"), HEARTBEAT_ACK((byte) 5, "长连接心跳pong"), CANCEL((byte) 6,
+              "客户端取消请求");
+  private byte type;
+  private String desc;
+
+  private HippoFrameEnum(byte type, String desc) {
+    this.type = type;
+    this.desc = desc;
+  }
+
+  public byte getType() {
+    return type;
+  }
+
+  public String getDesc() {
+    return desc;
+  }
+
+  public static HippoFrameEnum getByType(byte type) {
+    for (HippoFrameEnum hippoFrameEnum : HippoFrameEnum.values()) {
+      if (hippoFrameEnum.type == type) {
+        return hippoFrameEnum;
+      }
+    }
+    return null;
+  }
+}
@@ -0,0 +1,39 @@
+package com.github.hippo.enums;
+
+/**
+ * 请求优先级枚举,服务端排队时优先执行高优先级的请求
+ * 
+ * @author sl
+ *
+ */
+public enum HippoPriorityEnum {
+  HIGH(1, "高优先级,比如用户正在等待的请求"), NORMAL(0, "默认"), LOW(-1, "低优先级,比如后台批量任务");
+  private int priority;
+  private String desc;
+
+  private HippoPriorityEnum(int priority, String desc) {
+    this.priority = priority;
+    this.desc = desc;
+  }
+
+  public int getPriority() {
+    return priority;
+  }
+
+  public String getDesc() {
+    return desc;
+  }
+
+  /**
+   * 老版本客户端不传优先级(为0),按NORMAL处理;超出范围的按最近的处理
+   * 
+   * @param priority HippoRequest里的优先级
+   * @return 优先级
+   */
+  public static HippoPriorityEnum getByPriority(int priority) {
+    if (priority > 0) {
+      return HIGH;
+    }
+    return priority < 0 ? LOW : NORMAL;
+  }
+}
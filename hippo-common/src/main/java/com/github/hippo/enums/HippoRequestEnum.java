@@ -5,7 +5,7 @@ package com.github.hippo.enums;
  *
  */
 public enum HippoRequestEnum {
-  RPC(0, "RPC调用"), API(1, "API调用"), PING(2, "长连接PING");
+  RPC(0, "RPC调用"), API(1, "API调用");
   private int type;
   private String desc;
 
@@ -0,0 +1,24 @@
+package com.github.hippo.exception;
+/**
+ * 服务端过载,请求没有被执行,可以换一个endpoint重试
+ * @author sl
+ *
+ */
+public class HippoServerBusyException extends HippoRuntimeException {
+  /**
+   * 
+   */
+  private static final long serialVersionUID = 3284471965127021577L;
+
+  public HippoServerBusyException(String msg) {
+    super(msg);
+
+  }
+
+  public HippoServerBusyException(String msg, Throwable throwable) {
+    super(msg, throwable);
+  }
+
+
+
+}
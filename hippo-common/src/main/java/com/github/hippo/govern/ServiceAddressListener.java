@@ -0,0 +1,21 @@
+package com.github.hippo.govern;
+
+import java.util.List;
+
+/**
+ * 服务地址变化监听,由服务治理实现在注册中心刷新后推送增量
+ * 
+ * @author sl
+ *
+ */
+public interface ServiceAddressListener {
+
+  /**
+   * 服务地址发生变化
+   * 
+   * @param serviceName 注册服务名
+   * @param added 新增的ip:port
+   * @param removed 下线的ip:port
+   */
+  void onChange(String serviceName, List<String> added, List<String> removed);
+}
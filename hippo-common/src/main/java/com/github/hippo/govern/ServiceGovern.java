@@ -1,6 +1,8 @@
 package com.github.hippo.govern;
 
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 /**
  * 服务管理
@@ -17,6 +19,13 @@ public interface ServiceGovern {
    */
   public int register(String serviceName);
 
+  /**
+   * 服务下线(优雅停机时调用),不支持的实现可以不实现
+   * 
+   * @param serviceName 注册服务名
+   */
+  public default void unregister(String serviceName) {}
+
   /**
    * 获取服务地址 ip:port 
    * 127.0.0.1:7070
@@ -33,4 +42,23 @@ public interface ServiceGovern {
    */
   public List<String>getServiceAddresses(String serviceName);
 
+  /**
+   * 订阅服务地址变化,不支持推送的实现可以不实现(客户端仍会定时拉取)
+   * 
+   * @param listener 监听器
+   */
+  public default void subscribe(ServiceAddressListener listener) {}
+
+  /**
+   * 获取某个服务端注册时附带的元数据(key见ServiceMetadata),不支持的实现返回空map
+   * 
+   * @param serviceName 注册服务名
+   * @param serviceAddress ip:port
+   * @return 元数据
+   */
+  public default Map<String, String> getServiceMetadata(String serviceName,
+      String serviceAddress) {
+    return Collections.emptyMap();
+  }
+
 }
@@ -0,0 +1,32 @@
+package com.github.hippo.govern;
+
+/**
+ * 服务端注册时附带的元数据key
+ * 
+ * @author sl
+ *
+ */
+public final class ServiceMetadata {
+
+  private ServiceMetadata() {}
+
+  /**
+   * 服务端启动时间(毫秒时间戳)
+   */
+  public static final String START_TIME = "hippo.startTime";
+
+  /**
+   * 服务端建议的预热时长(毫秒),客户端在这段时间内逐步增加分给它的流量
+   */
+  public static final String WARMUP_MILLIS = "hippo.warmupMillis";
+
+  /**
+   * 服务端所在的可用区
+   */
+  public static final String ZONE = "hippo.zone";
+
+  /**
+   * 服务端所在的主机标识(默认hostname),客户端用来判断是否同机
+   */
+  public static final String HOST_ID = "hippo.hostId";
+}
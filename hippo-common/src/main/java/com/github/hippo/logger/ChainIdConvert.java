@@ -11,6 +11,6 @@ import ch.qos.logback.classic.spi.ILoggingEvent;
 public class ChainIdConvert extends ClassicConverter {
     @Override
     public String convert(ILoggingEvent event) {
-        return ChainThreadLocal.INSTANCE.getChainId();
+        return ChainThreadLocal.INSTANCE.peekChainId();
     }
 }
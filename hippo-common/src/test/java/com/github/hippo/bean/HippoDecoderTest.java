@@ -0,0 +1,125 @@
+package com.github.hippo.bean;
+
+import java.util.Arrays;
+
+import com.github.hippo.enums.HippoFrameEnum;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import junit.framework.TestCase;
+
+/**
+ * 帧编解码:心跳,取消,下线通知,批量帧和不认识的帧
+ * 
+ * @author sl
+ *
+ */
+public class HippoDecoderTest extends TestCase {
+
+  private static Object roundTrip(Object msg) {
+    EmbeddedChannel encoder = new EmbeddedChannel(new HippoEncoder(HippoRequest.class));
+    assertTrue(encoder.writeOutbound(msg));
+    ByteBuf frame = encoder.readOutbound();
+    EmbeddedChannel decoder = new EmbeddedChannel(new HippoDecoder(HippoRequest.class));
+    decoder.writeInbound(frame);
+    Object decoded = decoder.readInbound();
+    assertNull(decoder.readInbound());
+    return decoded;
+  }
+
+  public void testHeartbeatPingAndPong() {
+    HippoHeartbeat ping = (HippoHeartbeat) roundTrip(HippoHeartbeat.ping(123456789L));
+    assertFalse(ping.isPong());
+    assertEquals(123456789L, ping.getTimestamp());
+
+    HippoHeartbeat pong = (HippoHeartbeat) roundTrip(HippoHeartbeat.pong(42L));
+    assertTrue(pong.isPong());
+    assertEquals(42L, pong.getTimestamp());
+  }
+
+  public void testHeartbeatWithoutTimestamp() {
+    ByteBuf frame = Unpooled.buffer();
+    frame.writeInt(1);
+    frame.writeByte(HippoFrameEnum.HEARTBEAT.getType());
+    EmbeddedChannel decoder = new EmbeddedChannel(new HippoDecoder(HippoRequest.class));
+    decoder.writeInbound(frame);
+    HippoHeartbeat ping = decoder.readInbound();
+    assertFalse(ping.isPong());
+    assertEquals(0, ping.getTimestamp());
+  }
+
+  public void testCancel() {
+    HippoCancel cancel = (HippoCancel) roundTrip(new HippoCancel(Long.MAX_VALUE - 1));
+    assertEquals(Long.MAX_VALUE - 1, cancel.getRequestId());
+  }
+
+  public void testGoAway() {
+    assertSame(HippoGoAway.INSTANCE, roundTrip(HippoGoAway.INSTANCE));
+  }
+
+  public void testRequestBatch() {
+    HippoRequest first = new HippoRequest();
+    first.setRequestId(1);
+    first.setServiceName("a");
+    HippoRequest second = new HippoRequest();
+    second.setRequestId(2);
+    second.setServiceName("b");
+    HippoRequestBatch batch =
+        (HippoRequestBatch) roundTrip(new HippoRequestBatch(Arrays.asList(first, second)));
+    assertEquals(2, batch.getRequests().size());
+    assertEquals(1, batch.getRequests().get(0).getRequestId());
+    assertEquals("b", batch.getRequests().get(1).getServiceName());
+  }
+
+  public void testMessage() {
+    HippoRequest request = new HippoRequest();
+    request.setRequestId(7);
+    request.setTimeout(300);
+    request.setPriority(-1);
+    HippoRequest decoded = (HippoRequest) roundTrip(request);
+    assertEquals(7, decoded.getRequestId());
+    assertEquals(300, decoded.getTimeout());
+    assertEquals(-1, decoded.getPriority());
+  }
+
+  public void testUnknownAndTruncatedFramesSkipped() {
+    ByteBuf in = Unpooled.buffer();
+    // 不认识的帧类型
+    in.writeInt(4);
+    in.writeByte(99);
+    in.writeBytes(new byte[] {1, 2, 3});
+    // 帧体不足8字节的取消帧
+    in.writeInt(5);
+    in.writeByte(HippoFrameEnum.CANCEL.getType());
+    in.writeInt(1);
+    in.writeInt(9);
+    in.writeByte(HippoFrameEnum.HEARTBEAT.getType());
+    in.writeLong(5L);
+    EmbeddedChannel decoder = new EmbeddedChannel(new HippoDecoder(HippoRequest.class));
+    decoder.writeInbound(in);
+    HippoHeartbeat ping = decoder.readInbound();
+    assertEquals(5L, ping.getTimestamp());
+    assertNull(decoder.readInbound());
+  }
+
+  public void testPartialFrameWaitsForRest() {
+    EmbeddedChannel encoder = new EmbeddedChannel(new HippoEncoder(HippoRequest.class));
+    encoder.writeOutbound(new HippoCancel(9));
+    ByteBuf frame = encoder.readOutbound();
+    EmbeddedChannel decoder = new EmbeddedChannel(new HippoDecoder(HippoRequest.class));
+    decoder.writeInbound(frame.readRetainedSlice(6));
+    assertNull(decoder.readInbound());
+    decoder.writeInbound(frame);
+    HippoCancel cancel = decoder.readInbound();
+    assertEquals(9, cancel.getRequestId());
+  }
+
+  public void testInvalidLengthClosesChannel() {
+    ByteBuf in = Unpooled.buffer();
+    in.writeInt(0);
+    EmbeddedChannel decoder = new EmbeddedChannel(new HippoDecoder(HippoRequest.class));
+    decoder.writeInbound(in);
+    assertFalse(decoder.isOpen());
+  }
+}
@@ -0,0 +1,75 @@
+package com.github.hippo.chain;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.github.hippo.enums.HippoPriorityEnum;
+
+import junit.framework.TestCase;
+
+/**
+ * deadline传递:下游调用的剩余超时时间
+ * 
+ * @author sl
+ *
+ */
+public class ChainThreadLocalTest extends TestCase {
+
+  @Override
+  protected void tearDown() {
+    ChainThreadLocal.INSTANCE.clearTL();
+  }
+
+  private static long nanosFromNow(long millis) {
+    return System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+  }
+
+  public void testWithoutDeadlineKeepsTimeout() {
+    assertEquals(0, ChainThreadLocal.INSTANCE.getDeadlineNanos());
+    assertFalse(ChainThreadLocal.INSTANCE.isDeadlineExceeded());
+    assertEquals(500, ChainThreadLocal.INSTANCE.remainingTimeout(500));
+    assertEquals(0, ChainThreadLocal.INSTANCE.remainingTimeout(0));
+  }
+
+  public void testDeadlineCapsTimeout() {
+    ChainThreadLocal.INSTANCE.setDeadline(nanosFromNow(200));
+    int remaining = ChainThreadLocal.INSTANCE.remainingTimeout(5000);
+    assertTrue(remaining > 0 && remaining <= 201);
+    // 配置的超时时间更短时用配置的
+    assertEquals(50, ChainThreadLocal.INSTANCE.remainingTimeout(50));
+    // 没有配置超时时间时用剩余时间
+    int unbounded = ChainThreadLocal.INSTANCE.remainingTimeout(0);
+    assertTrue(unbounded > 0 && unbounded <= 201);
+    assertFalse(ChainThreadLocal.INSTANCE.isDeadlineExceeded());
+  }
+
+  public void testExceededDeadline() {
+    ChainThreadLocal.INSTANCE.setDeadline(System.nanoTime() - 1);
+    assertTrue(ChainThreadLocal.INSTANCE.isDeadlineExceeded());
+    assertEquals(0, ChainThreadLocal.INSTANCE.remainingTimeout(500));
+  }
+
+  public void testClearChainKeepsDeadline() {
+    long deadline = nanosFromNow(1000);
+    ChainThreadLocal.INSTANCE.setDeadline(deadline);
+    ChainThreadLocal.INSTANCE.setPriority(HippoPriorityEnum.LOW);
+    ChainThreadLocal.INSTANCE.setChainId(1, 2);
+    ChainThreadLocal.INSTANCE.clearChain();
+    assertEquals(deadline, ChainThreadLocal.INSTANCE.getDeadlineNanos());
+    assertEquals(HippoPriorityEnum.LOW, ChainThreadLocal.INSTANCE.getPriority());
+
+    ChainThreadLocal.INSTANCE.clearTL();
+    assertEquals(0, ChainThreadLocal.INSTANCE.getDeadlineNanos());
+    assertNull(ChainThreadLocal.INSTANCE.getPriority());
+    assertEquals(500, ChainThreadLocal.INSTANCE.remainingTimeout(500));
+  }
+
+  public void testDeadlineIsPerThread() throws InterruptedException {
+    ChainThreadLocal.INSTANCE.setDeadline(nanosFromNow(1000));
+    AtomicLong other = new AtomicLong(-1);
+    Thread thread = new Thread(() -> other.set(ChainThreadLocal.INSTANCE.getDeadlineNanos()));
+    thread.start();
+    thread.join();
+    assertEquals(0, other.get());
+  }
+}
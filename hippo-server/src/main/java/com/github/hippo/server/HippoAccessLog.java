@@ -0,0 +1,233 @@
+package com.github.hippo.server;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.alibaba.fastjson.JSON;
+import com.github.hippo.bean.HippoRequest;
+import com.github.hippo.bean.HippoResponse;
+import com.github.hippo.chain.ChainId;
+import com.github.hippo.enums.HippoRequestEnum;
+
+/**
+ * 服务端访问日志
+ *
+ * 业务线程只把固定字段放进无锁环形缓冲区,由后台线程格式化并写到名为hippo.access的logger;缓冲区满了直接丢弃,不阻塞业务线程.
+ * 正常请求按sampleRate采样,只记固定字段;慢请求和失败请求全部记录,并且带上参数和返回结果.
+ * 参数和返回结果在业务线程上序列化成字符串,后台线程不持有业务对象的引用
+ *
+ * @author sl
+ *
+ */
+enum HippoAccessLog {
+  INSTANCE;
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(HippoAccessLog.class);
+  private static final Logger ACCESS_LOGGER = LoggerFactory.getLogger("hippo.access");
+
+  // 参数和返回结果最多记录的字符数
+  private static final int MAX_DETAIL_LENGTH = 2048;
+  private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+  private volatile boolean enabled = false;
+  private double sampleRate;
+  private long slowNanos;
+
+  // 多生产者单消费者的环形缓冲区:生产者CAS占位后写入槽位,后台线程按顺序取出并清空槽位
+  private AtomicReferenceArray<Entry> slots;
+  private int mask;
+  private final AtomicLong tail = new AtomicLong(0);
+  private final AtomicLong head = new AtomicLong(0);
+  private final AtomicLong dropped = new AtomicLong(0);
+
+  // 只在后台线程里用
+  private final SimpleDateFormat timeFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+  private Thread writer;
+  private volatile boolean running = false;
+
+  synchronized void configure(HippoServerConfig hippoServerConfig) {
+    if (running || !hippoServerConfig.isAccessLogEnabled()) {
+      return;
+    }
+    int capacity = Integer.highestOneBit(Math.max(hippoServerConfig.getAccessLogBufferSize(), 2));
+    slots = new AtomicReferenceArray<>(capacity);
+    mask = capacity - 1;
+    sampleRate = hippoServerConfig.getAccessLogSampleRate();
+    slowNanos = TimeUnit.MILLISECONDS.toNanos(hippoServerConfig.getAccessLogSlowMillis());
+    running = true;
+    writer = new Thread(this::drainLoop, "hippo-access-log");
+    writer.setDaemon(true);
+    writer.start();
+    enabled = true;
+  }
+
+  /**
+   * 业务线程调用,做采样判断和入队;需要记录详情时在这里序列化参数和返回结果
+   *
+   * @param request request
+   * @param response response
+   * @param costNanos 处理耗时
+   */
+  void record(HippoRequest request, HippoResponse response, long costNanos) {
+    if (!enabled) {
+      return;
+    }
+    boolean detail = response.isError() || costNanos >= slowNanos;
+    if (!detail && (sampleRate <= 0 || ThreadLocalRandom.current().nextDouble() >= sampleRate)) {
+      return;
+    }
+    // 缓冲区已满时不必序列化参数,直接丢弃
+    if (tail.get() - head.get() >= slots.length()) {
+      dropped.incrementAndGet();
+      return;
+    }
+    Entry entry = new Entry(request, response, costNanos, detail);
+    long current;
+    do {
+      current = tail.get();
+      if (current - head.get() >= slots.length()) {
+        dropped.incrementAndGet();
+        return;
+      }
+    } while (!tail.compareAndSet(current, current + 1));
+    slots.lazySet((int) current & mask, entry);
+  }
+
+  private void drainLoop() {
+    while (running) {
+      if (drain() == 0) {
+        LockSupport.parkNanos(IDLE_PARK_NANOS);
+      }
+    }
+    drain();
+  }
+
+  private int drain() {
+    int count = 0;
+    long current = head.get();
+    while (true) {
+      int index = (int) current & mask;
+      Entry entry = slots.get(index);
+      // 槽位为空:缓冲区空了,或者生产者已经占位还没写入,下次再取
+      if (entry == null) {
+        break;
+      }
+      slots.lazySet(index, null);
+      head.lazySet(++current);
+      count++;
+      try {
+        ACCESS_LOGGER.info(entry.format(timeFormat));
+      } catch (Exception e) {
+        LOGGER.warn("access log format error", e);
+      }
+    }
+    long lost = dropped.getAndSet(0);
+    if (lost > 0) {
+      LOGGER.warn("access log缓冲区已满,丢弃{}条", lost);
+    }
+    return count;
+  }
+
+  /**
+   * 停止后台线程,写完缓冲区里剩下的日志
+   */
+  synchronized void shutdown() {
+    enabled = false;
+    if (!running) {
+      return;
+    }
+    running = false;
+    LockSupport.unpark(writer);
+    try {
+      writer.join(1000);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static final class Entry {
+    private final long timestamp = System.currentTimeMillis();
+    private final String serviceName;
+    private final String className;
+    private final String methodName;
+    private final Integer requestType;
+    private final long requestId;
+    private final long chainIdHigh;
+    private final long chainIdLow;
+    private final int chainOrder;
+    private final long costNanos;
+    private final boolean error;
+    private final String errorMessage;
+    // 只有慢请求和失败请求才记录,已经序列化好的快照
+    private final String parameters;
+    private final String result;
+
+    Entry(HippoRequest request, HippoResponse response, long costNanos, boolean detail) {
+      this.serviceName = request.getServiceName();
+      this.className = request.getClassName();
+      this.methodName = request.getMethodName();
+      this.requestType = request.getRequestType();
+      this.requestId = request.getRequestId();
+      this.chainIdHigh = request.getChainIdHigh();
+      this.chainIdLow = request.getChainIdLow();
+      this.chainOrder = request.getChainOrder();
+      this.costNanos = costNanos;
+      this.error = response.isError();
+      Throwable throwable = response.getThrowable();
+      this.errorMessage = throwable == null ? null
+          : throwable.getClass().getName() + ':' + throwable.getMessage();
+      Object[] requestParameters = request.getParameters();
+      this.parameters = detail && requestParameters != null ? toJson(requestParameters) : null;
+      // 失败时result是request本身,参数已经记了
+      Object responseResult = response.getResult();
+      this.result = detail && !error && responseResult != null ? toJson(responseResult) : null;
+    }
+
+    String format(SimpleDateFormat timeFormat) {
+      HippoRequestEnum type = requestType == null ? null : HippoRequestEnum.getByType(requestType);
+      StringBuilder sb = new StringBuilder(256);
+      sb.append("time=").append(timeFormat.format(new Date(timestamp))).append(" service=")
+          .append(serviceName).append(" method=").append(className).append('.')
+          .append(methodName).append(" type=")
+          .append(type == null ? String.valueOf(requestType) : type.name())
+          .append(" requestId=").append(requestId).append(" chainId=")
+          .append(ChainId.toString(chainIdHigh, chainIdLow)).append(" chainOrder=")
+          .append(chainOrder).append(" costMicros=")
+          .append(TimeUnit.NANOSECONDS.toMicros(costNanos)).append(" status=")
+          .append(error ? "ERROR" : "OK");
+      if (errorMessage != null) {
+        sb.append(" error=").append(errorMessage);
+      }
+      if (parameters != null) {
+        sb.append(" params=").append(parameters);
+      }
+      if (result != null) {
+        sb.append(" result=").append(result);
+      }
+      return sb.toString();
+    }
+
+    private static String toJson(Object object) {
+      String json;
+      try {
+        json = JSON.toJSONString(object);
+      } catch (Exception e) {
+        try {
+          json = String.valueOf(object);
+        } catch (Exception e1) {
+          json = object.getClass().getName();
+        }
+      }
+      return json.length() > MAX_DETAIL_LENGTH ? json.substring(0, MAX_DETAIL_LENGTH) + "..."
+          : json;
+    }
+  }
+}
@@ -0,0 +1,54 @@
+package com.github.hippo.server;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import io.netty.util.collection.LongObjectHashMap;
+
+/**
+ * 一个连接上已经进入业务线程池还没返回的请求,收到客户端的取消帧时按requestId找到并取消
+ * 
+ * requestId是连接级别的,所以每个连接一个
+ *
+ * @author sl
+ *
+ */
+final class HippoCancelRegistry {
+
+  private final LongObjectHashMap<HippoServerTask> tasks = new LongObjectHashMap<>();
+
+  synchronized void put(long requestId, HippoServerTask task) {
+    tasks.put(requestId, task);
+  }
+
+  synchronized void remove(long requestId) {
+    tasks.remove(requestId);
+  }
+
+  /**
+   * @return 是否找到了这个请求(已经返回的请求找不到)
+   */
+  boolean cancel(long requestId) {
+    HippoServerTask task;
+    synchronized (this) {
+      task = tasks.remove(requestId);
+    }
+    if (task == null) {
+      return false;
+    }
+    task.cancel();
+    return true;
+  }
+
+  /**
+   * 连接断开时取消所有请求,结果已经没法返回了
+   */
+  void cancelAll() {
+    List<HippoServerTask> list;
+    synchronized (this) {
+      list = new ArrayList<>(tasks.values());
+      tasks.clear();
+    }
+    list.forEach(HippoServerTask::cancel);
+  }
+}
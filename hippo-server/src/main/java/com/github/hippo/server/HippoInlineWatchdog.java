@@ -0,0 +1,139 @@
+package com.github.hippo.server;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.hippo.annotation.HippoNonBlocking;
+
+import io.netty.util.concurrent.FastThreadLocal;
+
+/**
+ * 在io线程上直接执行@HippoNonBlocking方法,并监控执行时间
+ *
+ * 执行完超过预算打印告警;还没执行完就已经超过预算的(比如卡在锁或者io上),后台线程会打印io线程当前的堆栈,每次调用只打一次
+ *
+ * @author sl
+ *
+ */
+enum HippoInlineWatchdog {
+  INSTANCE;
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(HippoInlineWatchdog.class);
+
+  private volatile boolean enabled = true;
+  private volatile long defaultBudgetNanos = TimeUnit.MILLISECONDS.toNanos(1);
+  private volatile long checkIntervalMillis = 100;
+
+  // 每个io线程一个,后台线程遍历检查
+  private final List<InlineCall> calls = new CopyOnWriteArrayList<>();
+  private final FastThreadLocal<InlineCall> current = new FastThreadLocal<InlineCall>() {
+    @Override
+    protected InlineCall initialValue() {
+      InlineCall call = new InlineCall(Thread.currentThread());
+      calls.add(call);
+      startWatchdog();
+      return call;
+    }
+  };
+  private ScheduledExecutorService watchdog;
+
+  synchronized void configure(HippoServerConfig hippoServerConfig) {
+    this.enabled = hippoServerConfig.isNonBlockingEnabled();
+    this.defaultBudgetNanos =
+        TimeUnit.MICROSECONDS.toNanos(Math.max(hippoServerConfig.getNonBlockingBudgetMicros(), 1));
+    this.checkIntervalMillis = Math.max(hippoServerConfig.getNonBlockingCheckIntervalMillis(), 1);
+  }
+
+  /**
+   * @param annotation 实现类方法上的注解,可以为null
+   * @return 在io线程上执行的时间预算,0表示不在io线程上执行
+   */
+  long resolveBudgetNanos(HippoNonBlocking annotation) {
+    if (!enabled || annotation == null) {
+      return 0;
+    }
+    return annotation.budgetMicros() > 0 ? TimeUnit.MICROSECONDS.toNanos(annotation.budgetMicros())
+        : defaultBudgetNanos;
+  }
+
+  private synchronized void startWatchdog() {
+    if (watchdog != null) {
+      return;
+    }
+    watchdog = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread thread = new Thread(r, "hippo-inline-watchdog");
+      thread.setDaemon(true);
+      return thread;
+    });
+    watchdog.scheduleWithFixedDelay(this::check, checkIntervalMillis, checkIntervalMillis,
+        TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * 在当前(io)线程上执行
+   */
+  <T> T invoke(HippoServiceMethod serviceMethod, Supplier<T> call) {
+    InlineCall inlineCall = current.get();
+    inlineCall.begin(serviceMethod);
+    try {
+      return call.get();
+    } finally {
+      long costNanos = inlineCall.end();
+      if (costNanos > serviceMethod.getInlineBudgetNanos()) {
+        LOGGER.warn("非阻塞方法{}在io线程上执行了{}微秒,超过预算{}微秒", serviceMethod.getMethod(),
+            TimeUnit.NANOSECONDS.toMicros(costNanos),
+            TimeUnit.NANOSECONDS.toMicros(serviceMethod.getInlineBudgetNanos()));
+      }
+    }
+  }
+
+  private void check() {
+    long now = System.nanoTime();
+    for (InlineCall call : calls) {
+      HippoServiceMethod serviceMethod = call.serviceMethod;
+      long start = call.startNanos;
+      if (serviceMethod == null || call.reported
+          || now - start <= serviceMethod.getInlineBudgetNanos()) {
+        continue;
+      }
+      call.reported = true;
+      Throwable stack = new Throwable("io线程" + call.thread.getName() + "当前堆栈");
+      stack.setStackTrace(call.thread.getStackTrace());
+      // 堆栈取出来的时候这次调用可能已经结束
+      if (call.startNanos == start && call.serviceMethod == serviceMethod) {
+        LOGGER.warn("非阻塞方法" + serviceMethod.getMethod() + "已经在io线程上执行了"
+            + TimeUnit.NANOSECONDS.toMillis(now - start) + "毫秒,还没有结束", stack);
+      }
+    }
+  }
+
+  private static final class InlineCall {
+    private final Thread thread;
+    // 为null表示当前没有在执行
+    private volatile HippoServiceMethod serviceMethod;
+    private volatile long startNanos;
+    private volatile boolean reported;
+
+    InlineCall(Thread thread) {
+      this.thread = thread;
+    }
+
+    void begin(HippoServiceMethod method) {
+      reported = false;
+      startNanos = System.nanoTime();
+      serviceMethod = method;
+    }
+
+    long end() {
+      serviceMethod = null;
+      return System.nanoTime() - startNanos;
+    }
+  }
+}
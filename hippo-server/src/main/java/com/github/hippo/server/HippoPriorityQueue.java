@@ -0,0 +1,281 @@
+package com.github.hippo.server;
+
+import java.util.AbstractQueue;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.github.hippo.enums.HippoPriorityEnum;
+
+/**
+ * 舱壁的有界队列,按优先级分成几条道,每条道内先进先出
+ *
+ * 出队时低一级的请求按晚到agingNanos处理:短时间内总是先执行高优先级的请求,
+ * 低优先级的请求排队超过agingNanos后也能轮到,不会被持续的高优先级请求饿死.agingNanos为0时退化成FIFO
+ *
+ * 只放HippoServerTask,用法和ArrayBlockingQueue一样由ThreadPoolExecutor使用
+ *
+ * @author sl
+ *
+ */
+final class HippoPriorityQueue extends AbstractQueue<Runnable> implements BlockingQueue<Runnable> {
+
+  private final int capacity;
+  private final long agingNanos;
+  // 下标是HippoPriorityEnum.ordinal(),越小优先级越高
+  private final List<ArrayDeque<HippoServerTask>> lanes;
+  private int count;
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition notEmpty = lock.newCondition();
+
+  HippoPriorityQueue(int capacity, long agingMillis) {
+    this.capacity = capacity;
+    this.agingNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(agingMillis, 0));
+    int size = HippoPriorityEnum.values().length;
+    this.lanes = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      lanes.add(new ArrayDeque<>());
+    }
+  }
+
+  private static int laneOf(Runnable runnable) {
+    return ((HippoServerTask) runnable).getPriority().ordinal();
+  }
+
+  private void enqueue(Runnable runnable) {
+    lanes.get(laneOf(runnable)).addLast((HippoServerTask) runnable);
+    count++;
+    notEmpty.signal();
+  }
+
+  /**
+   * 每条道的队头按(入队时间+道下标*agingNanos)比较,取最小的
+   */
+  private HippoServerTask dequeue() {
+    long now = System.nanoTime();
+    ArrayDeque<HippoServerTask> selected = null;
+    long selectedKey = 0;
+    for (int i = 0; i < lanes.size(); i++) {
+      HippoServerTask head = lanes.get(i).peekFirst();
+      if (head == null) {
+        continue;
+      }
+      // 用相对now的值比较,避免nanoTime溢出
+      long key = head.getEnqueueNanos() - now + i * agingNanos;
+      if (selected == null || key < selectedKey) {
+        selected = lanes.get(i);
+        selectedKey = key;
+      }
+    }
+    if (selected == null) {
+      return null;
+    }
+    count--;
+    return selected.pollFirst();
+  }
+
+  /**
+   * 队列满了时给优先级更高的请求腾位置:取出优先级最低的道里最后入队的请求
+   *
+   * @param task 要入队的请求
+   * @return 被挤出的请求,没有比task优先级低的请求时返回null
+   */
+  HippoServerTask pollLower(HippoServerTask task) {
+    lock.lock();
+    try {
+      for (int i = lanes.size() - 1; i > laneOf(task); i--) {
+        HippoServerTask victim = lanes.get(i).pollLast();
+        if (victim != null) {
+          count--;
+          return victim;
+        }
+      }
+      return null;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public boolean offer(Runnable runnable) {
+    lock.lock();
+    try {
+      if (count >= capacity) {
+        return false;
+      }
+      enqueue(runnable);
+      return true;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public void put(Runnable runnable) throws InterruptedException {
+    // ThreadPoolExecutor不会调用put,队列满了不等待
+    if (!offer(runnable)) {
+      throw new IllegalStateException("Queue full");
+    }
+  }
+
+  @Override
+  public boolean offer(Runnable runnable, long timeout, TimeUnit unit) {
+    return offer(runnable);
+  }
+
+  @Override
+  public Runnable poll() {
+    lock.lock();
+    try {
+      return dequeue();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public Runnable take() throws InterruptedException {
+    lock.lockInterruptibly();
+    try {
+      while (count == 0) {
+        notEmpty.await();
+      }
+      return dequeue();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public Runnable poll(long timeout, TimeUnit unit) throws InterruptedException {
+    long nanos = unit.toNanos(timeout);
+    lock.lockInterruptibly();
+    try {
+      while (count == 0) {
+        if (nanos <= 0) {
+          return null;
+        }
+        nanos = notEmpty.awaitNanos(nanos);
+      }
+      return dequeue();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public Runnable peek() {
+    lock.lock();
+    try {
+      for (ArrayDeque<HippoServerTask> lane : lanes) {
+        if (!lane.isEmpty()) {
+          return lane.peekFirst();
+        }
+      }
+      return null;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public boolean remove(Object o) {
+    if (!(o instanceof HippoServerTask)) {
+      return false;
+    }
+    lock.lock();
+    try {
+      if (lanes.get(laneOf((HippoServerTask) o)).removeFirstOccurrence(o)) {
+        count--;
+        return true;
+      }
+      return false;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public int size() {
+    lock.lock();
+    try {
+      return count;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public int remainingCapacity() {
+    lock.lock();
+    try {
+      return capacity - count;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public int drainTo(Collection<? super Runnable> c) {
+    return drainTo(c, Integer.MAX_VALUE);
+  }
+
+  @Override
+  public int drainTo(Collection<? super Runnable> c, int maxElements) {
+    lock.lock();
+    try {
+      int n = 0;
+      while (n < maxElements && count > 0) {
+        c.add(dequeue());
+        n++;
+      }
+      return n;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * 快照,按优先级从高到低
+   */
+  @Override
+  public Iterator<Runnable> iterator() {
+    List<Runnable> snapshot = new ArrayList<>();
+    lock.lock();
+    try {
+      lanes.forEach(snapshot::addAll);
+    } finally {
+      lock.unlock();
+    }
+    Iterator<Runnable> it = snapshot.iterator();
+    return new Iterator<Runnable>() {
+      private Runnable last;
+
+      @Override
+      public boolean hasNext() {
+        return it.hasNext();
+      }
+
+      @Override
+      public Runnable next() {
+        last = it.next();
+        return last;
+      }
+
+      @Override
+      public void remove() {
+        if (last == null) {
+          throw new IllegalStateException();
+        }
+        HippoPriorityQueue.this.remove(last);
+        last = null;
+      }
+    };
+  }
+}
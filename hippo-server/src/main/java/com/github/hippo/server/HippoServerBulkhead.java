@@ -0,0 +1,172 @@
+package com.github.hippo.server;
+
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.github.hippo.enums.HippoPriorityEnum;
+
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+/**
+ * 一个舱壁:独立的业务线程池,有界队列,过载时快速失败
+ *
+ * 队列满了按queue.policy拒绝请求;开启CoDel时排队太久的请求也不再执行.被拒绝的请求直接返回server busy,
+ * 客户端会换一个endpoint重试,不会在客户端已经超时之后还去执行
+ *
+ * 队列按请求优先级排队(见HippoPriorityQueue),队列满了时先挤掉优先级更低的请求.
+ * CoDel按优先级分开统计:高优先级的请求总是先出队,排队时间短,合在一起统计时最小排队时间由它决定,
+ * 低优先级积压了也判断不出来
+ *
+ * @author sl
+ *
+ */
+public final class HippoServerBulkhead {
+
+  private final String name;
+  private final int threads;
+  private final int queueCapacity;
+  private final ThreadPoolExecutor pool;
+  private final HippoPriorityQueue queue;
+  private final boolean discardOldest;
+  // 下标是HippoPriorityEnum.ordinal(),为null表示不开启CoDel
+  private final HippoServerCodel[] codels;
+  private final AtomicLong rejectedCount = new AtomicLong(0);
+  private final AtomicLong shedCount = new AtomicLong(0);
+
+  HippoServerBulkhead(String name, int threads, int queueCapacity, boolean discardOldest,
+      long codelTargetMillis, long codelIntervalMillis, long priorityAgingMillis) {
+    this.name = name;
+    this.threads = threads;
+    this.queueCapacity = queueCapacity;
+    this.discardOldest = discardOldest;
+    this.queue = new HippoPriorityQueue(queueCapacity, priorityAgingMillis);
+    this.codels = codelTargetMillis > 0
+        ? newCodels(codelTargetMillis, Math.max(codelIntervalMillis, 1)) : null;
+    // netty的DefaultThreadFactory创建FastThreadLocalThread,ChainThreadLocal走快速路径
+    this.pool = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+        queue, new DefaultThreadFactory("hippo-server-" + name), this::rejected);
+    pool.prestartAllCoreThreads();
+  }
+
+  private static HippoServerCodel[] newCodels(long targetMillis, long intervalMillis) {
+    HippoServerCodel[] codels = new HippoServerCodel[HippoPriorityEnum.values().length];
+    for (int i = 0; i < codels.length; i++) {
+      codels[i] = new HippoServerCodel(targetMillis, intervalMillis);
+    }
+    return codels;
+  }
+
+  void execute(HippoServerTask task) {
+    task.setBulkhead(this);
+    pool.execute(task);
+  }
+
+  /**
+   * 从队列里移除还没开始执行的请求
+   * 
+   * @return 是否移除成功,已经开始执行或者执行完了返回false
+   */
+  boolean remove(HippoServerTask task) {
+    return pool.remove(task);
+  }
+
+  boolean shouldShed(HippoPriorityEnum priority, long delayNanos) {
+    if (codels != null && codels[priority.ordinal()].shouldReject(delayNanos)) {
+      shedCount.incrementAndGet();
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * 队列满了:先挤掉一个优先级更低的请求;没有的话按queue.policy拒绝新请求或者排在最前面的请求
+   */
+  private void rejected(Runnable runnable, ThreadPoolExecutor executor) {
+    HippoServerTask task = (HippoServerTask) runnable;
+    if (executor.isShutdown()) {
+      reject(task, "服务端正在下线");
+      return;
+    }
+    HippoServerTask victim = queue.pollLower(task);
+    if (victim != null) {
+      reject(victim, "[" + name + "]队列已满,让给优先级更高的请求");
+    } else if (discardOldest) {
+      // 排在最前面的请求(考虑了优先级后等得最久的)最可能已经超时
+      Runnable oldest = queue.poll();
+      if (oldest != null) {
+        reject((HippoServerTask) oldest, "[" + name + "]队列已满,丢弃排队最久的请求");
+      }
+    } else {
+      reject(task, "[" + name + "]队列已满");
+      return;
+    }
+    if (!queue.offer(task)) {
+      reject(task, "[" + name + "]队列已满");
+    }
+  }
+
+  private void reject(HippoServerTask task, String reason) {
+    rejectedCount.incrementAndGet();
+    task.reject(reason);
+  }
+
+  void shutdown() {
+    pool.shutdown();
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public int getThreads() {
+    return threads;
+  }
+
+  public int getQueueCapacity() {
+    return queueCapacity;
+  }
+
+  /**
+   * @return 正在执行的请求数
+   */
+  public int getActiveCount() {
+    return pool.getActiveCount();
+  }
+
+  /**
+   * @return 排队中的请求数
+   */
+  public int getQueueSize() {
+    return pool.getQueue().size();
+  }
+
+  /**
+   * @return 已经执行完(包括被CoDel拒绝)的请求数,近似值
+   */
+  public long getCompletedCount() {
+    return pool.getCompletedTaskCount();
+  }
+
+  /**
+   * @return 因为队列满了被拒绝的请求数
+   */
+  public long getRejectedCount() {
+    return rejectedCount.get();
+  }
+
+  /**
+   * @return 因为CoDel判断过载被拒绝的请求数
+   */
+  public long getShedCount() {
+    return shedCount.get();
+  }
+
+  @Override
+  public String toString() {
+    return "HippoServerBulkhead [name=" + name + ", threads=" + threads + ", queueCapacity="
+        + queueCapacity + ", active=" + getActiveCount() + ", queueSize=" + getQueueSize()
+        + ", completed=" + getCompletedCount() + ", rejected=" + getRejectedCount() + ", shed="
+        + getShedCount() + "]";
+  }
+}
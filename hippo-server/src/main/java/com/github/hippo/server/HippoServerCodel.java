@@ -0,0 +1,49 @@
+package com.github.hippo.server;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * CoDel(Controlled Delay)过载判断
+ *
+ * 一个interval内的最小排队时间都超过target,说明队列一直没有排空,进入过载状态;过载时排队超过2倍target的请求直接拒绝.
+ * 只看最小值,突发流量造成的短暂排队不会触发
+ *
+ * @author sl
+ *
+ */
+final class HippoServerCodel {
+
+  private final long targetNanos;
+  private final long intervalNanos;
+  private final AtomicLong intervalEndNanos;
+  private final AtomicLong minDelayNanos = new AtomicLong(0);
+  private volatile boolean overloaded = false;
+
+  HippoServerCodel(long targetMillis, long intervalMillis) {
+    this.targetNanos = TimeUnit.MILLISECONDS.toNanos(targetMillis);
+    this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+    this.intervalEndNanos = new AtomicLong(System.nanoTime() + intervalNanos);
+  }
+
+  /**
+   * 业务线程从队列里取出请求时调用
+   *
+   * @param delayNanos 这个请求的排队时间
+   * @return 是否应该拒绝这个请求
+   */
+  boolean shouldReject(long delayNanos) {
+    long now = System.nanoTime();
+    long end = intervalEndNanos.get();
+    if (now - end > 0 && intervalEndNanos.compareAndSet(end, now + intervalNanos)) {
+      // 上一个interval结束,用它的最小排队时间判断是否过载,然后从当前样本开始新的interval
+      overloaded = minDelayNanos.getAndSet(delayNanos) > targetNanos;
+    } else {
+      long min;
+      do {
+        min = minDelayNanos.get();
+      } while (delayNanos < min && !minDelayNanos.compareAndSet(min, delayNanos));
+    }
+    return overloaded && delayNanos > 2 * targetNanos;
+  }
+}
@@ -0,0 +1,379 @@
+package com.github.hippo.server;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * server端io和业务线程池相关配置,都有默认值,可以在*.properties里覆盖
+ *
+ * @author sl
+ *
+ */
+@Component
+public class HippoServerConfig {
+
+  /**
+   * io(编解码)线程数,0表示cpu核数*2
+   */
+  @Value("${hippo.server.io.workerThreads:0}")
+  private int workerThreads;
+
+  /**
+   * accept线程数;只有epoll+reusePort时才会在同一端口上绑定多个监听socket,否则只用1个
+   */
+  @Value("${hippo.server.io.acceptThreads:0}")
+  private int acceptThreads;
+
+  /**
+   * 是否使用epoll native transport,非linux或者native库加载失败时自动退回nio
+   */
+  @Value("${hippo.server.io.epoll:true}")
+  private boolean epoll;
+
+  /**
+   * 是否开启SO_REUSEPORT(需要epoll,linux 3.9+),开启后由内核把新连接分散到多个accept线程
+   */
+  @Value("${hippo.server.io.reusePort:false}")
+  private boolean reusePort;
+
+  /**
+   * 监听socket的accept队列长度
+   */
+  @Value("${hippo.server.io.backlog:1024}")
+  private int backlog;
+
+  /**
+   * 连接的SO_SNDBUF字节数,0表示用系统默认值
+   */
+  @Value("${hippo.server.io.sendBufferBytes:0}")
+  private int sendBufferBytes;
+
+  /**
+   * 连接的SO_RCVBUF字节数,0表示用系统默认值
+   */
+  @Value("${hippo.server.io.receiveBufferBytes:0}")
+  private int receiveBufferBytes;
+
+  /**
+   * 业务线程数,0表示cpu核数*3+2
+   */
+  @Value("${hippo.server.pool.threads:0}")
+  private int poolThreads;
+
+  /**
+   * 业务线程池的队列长度,队列满了直接返回server busy
+   */
+  @Value("${hippo.server.queue.capacity:1024}")
+  private int queueCapacity;
+
+  /**
+   * 队列满时的策略:reject拒绝新请求,discardOldest拒绝排队最久的请求(它最可能已经超时)
+   */
+  @Value("${hippo.server.queue.policy:reject}")
+  private String queuePolicy;
+
+  /**
+   * CoDel目标排队毫秒数,0表示关闭;一个interval内的最小排队时间都超过它时进入过载状态,
+   * 过载时排队超过2倍target的请求直接返回server busy
+   */
+  @Value("${hippo.server.queue.targetMillis:5}")
+  private long queueTargetMillis;
+
+  /**
+   * CoDel的统计窗口毫秒数
+   */
+  @Value("${hippo.server.queue.intervalMillis:100}")
+  private long queueIntervalMillis;
+
+  /**
+   * 优先级排队时低一级的请求按晚到这么多毫秒处理:排队时间差在这之内总是先执行高优先级的请求,
+   * 超过后低优先级的请求也能轮到,避免被饿死;0表示不区分优先级,按FIFO执行.
+   * 
+   * CoDel按优先级分开判断过载,过载时先拒绝的是积压的低优先级请求.最低和最高优先级相差2倍agingMillis,
+   * 要小于queue.intervalMillis:这样每个interval里低优先级的请求也能出队,它的CoDel才有排队时间可以统计
+   */
+  @Value("${hippo.server.priority.agingMillis:40}")
+  private long priorityAgingMillis;
+
+  /**
+   * 方法到舱壁的映射,格式:ReportService=report;ReportService.export=export
+   * 
+   * 接口名可以是simpleName或者全限定名,接口.方法优先于接口,配置优先于@HippoBulkhead
+   */
+  @Value("${hippo.server.bulkhead.routes:}")
+  private String bulkheadRoutes;
+
+  /**
+   * 舱壁的线程数和队列长度,格式:report=4,100;export=2,10,优先于@HippoBulkhead
+   */
+  @Value("${hippo.server.bulkhead.pools:}")
+  private String bulkheadPools;
+
+  /**
+   * 是否记录访问日志(logger名为hippo.access)
+   */
+  @Value("${hippo.server.accessLog.enabled:true}")
+  private boolean accessLogEnabled;
+
+  /**
+   * 正常请求的采样率,0~1;慢请求和失败请求不受采样影响,全部记录
+   */
+  @Value("${hippo.server.accessLog.sampleRate:0.01}")
+  private double accessLogSampleRate;
+
+  /**
+   * 超过这个毫秒数的请求算慢请求,记录参数和返回结果
+   */
+  @Value("${hippo.server.accessLog.slowMillis:500}")
+  private long accessLogSlowMillis;
+
+  /**
+   * 访问日志缓冲区大小(向下取2的幂),写不过来时丢弃
+   */
+  @Value("${hippo.server.accessLog.bufferSize:8192}")
+  private int accessLogBufferSize;
+
+  /**
+   * 是否在io线程上直接执行@HippoNonBlocking方法,关闭后这些方法和其他方法一样进业务线程池
+   */
+  @Value("${hippo.server.nonBlocking.enabled:true}")
+  private boolean nonBlockingEnabled;
+
+  /**
+   * @HippoNonBlocking没有指定budgetMicros时的执行时间预算(微秒)
+   */
+  @Value("${hippo.server.nonBlocking.budgetMicros:1000}")
+  private long nonBlockingBudgetMicros;
+
+  /**
+   * 检查io线程上还没执行完的@HippoNonBlocking方法的间隔毫秒数
+   */
+  @Value("${hippo.server.nonBlocking.checkIntervalMillis:100}")
+  private long nonBlockingCheckIntervalMillis;
+
+  /**
+   * 客户端取消请求时是否中断正在执行这个请求的业务线程;不开启时只设置取消标记,
+   * 由业务代码通过ChainThreadLocal.INSTANCE.isCancelled()检查(中断可能导致正在用的nio连接被关闭,默认不开启)
+   */
+  @Value("${hippo.server.cancel.interrupt:false}")
+  private boolean cancelInterrupt;
+
+  /**
+   * @return 实际使用的业务线程数
+   */
+  public int resolvePoolThreads() {
+    return poolThreads > 0 ? poolThreads : Runtime.getRuntime().availableProcessors() * 3 + 2;
+  }
+
+  /**
+   * @return 实际使用的队列长度
+   */
+  public int resolveQueueCapacity() {
+    return queueCapacity > 0 ? queueCapacity : 1024;
+  }
+
+  /**
+   * @return 实际使用的io线程数
+   */
+  public int resolveWorkerThreads() {
+    return workerThreads > 0 ? workerThreads : Runtime.getRuntime().availableProcessors() * 2;
+  }
+
+  /**
+   * @param reusePortEnabled 是否真正开启了SO_REUSEPORT
+   * @return 实际使用的accept线程数,也是绑定的监听socket数
+   */
+  public int resolveAcceptThreads(boolean reusePortEnabled) {
+    if (!reusePortEnabled) {
+      return 1;
+    }
+    if (acceptThreads > 0) {
+      return acceptThreads;
+    }
+    return Math.max(1, Math.min(Runtime.getRuntime().availableProcessors() / 4, 4));
+  }
+
+  public int getWorkerThreads() {
+    return workerThreads;
+  }
+
+  public void setWorkerThreads(int workerThreads) {
+    this.workerThreads = workerThreads;
+  }
+
+  public int getAcceptThreads() {
+    return acceptThreads;
+  }
+
+  public void setAcceptThreads(int acceptThreads) {
+    this.acceptThreads = acceptThreads;
+  }
+
+  public boolean isEpoll() {
+    return epoll;
+  }
+
+  public void setEpoll(boolean epoll) {
+    this.epoll = epoll;
+  }
+
+  public boolean isReusePort() {
+    return reusePort;
+  }
+
+  public void setReusePort(boolean reusePort) {
+    this.reusePort = reusePort;
+  }
+
+  public int getBacklog() {
+    return backlog;
+  }
+
+  public void setBacklog(int backlog) {
+    this.backlog = backlog;
+  }
+
+  public int getSendBufferBytes() {
+    return sendBufferBytes;
+  }
+
+  public void setSendBufferBytes(int sendBufferBytes) {
+    this.sendBufferBytes = sendBufferBytes;
+  }
+
+  public int getReceiveBufferBytes() {
+    return receiveBufferBytes;
+  }
+
+  public void setReceiveBufferBytes(int receiveBufferBytes) {
+    this.receiveBufferBytes = receiveBufferBytes;
+  }
+
+  public int getPoolThreads() {
+    return poolThreads;
+  }
+
+  public void setPoolThreads(int poolThreads) {
+    this.poolThreads = poolThreads;
+  }
+
+  public int getQueueCapacity() {
+    return queueCapacity;
+  }
+
+  public void setQueueCapacity(int queueCapacity) {
+    this.queueCapacity = queueCapacity;
+  }
+
+  public String getQueuePolicy() {
+    return queuePolicy;
+  }
+
+  public void setQueuePolicy(String queuePolicy) {
+    this.queuePolicy = queuePolicy;
+  }
+
+  public long getQueueTargetMillis() {
+    return queueTargetMillis;
+  }
+
+  public void setQueueTargetMillis(long queueTargetMillis) {
+    this.queueTargetMillis = queueTargetMillis;
+  }
+
+  public long getQueueIntervalMillis() {
+    return queueIntervalMillis;
+  }
+
+  public void setQueueIntervalMillis(long queueIntervalMillis) {
+    this.queueIntervalMillis = queueIntervalMillis;
+  }
+
+  public long getPriorityAgingMillis() {
+    return priorityAgingMillis;
+  }
+
+  public void setPriorityAgingMillis(long priorityAgingMillis) {
+    this.priorityAgingMillis = priorityAgingMillis;
+  }
+
+  public String getBulkheadRoutes() {
+    return bulkheadRoutes;
+  }
+
+  public void setBulkheadRoutes(String bulkheadRoutes) {
+    this.bulkheadRoutes = bulkheadRoutes;
+  }
+
+  public String getBulkheadPools() {
+    return bulkheadPools;
+  }
+
+  public void setBulkheadPools(String bulkheadPools) {
+    this.bulkheadPools = bulkheadPools;
+  }
+
+  public boolean isAccessLogEnabled() {
+    return accessLogEnabled;
+  }
+
+  public void setAccessLogEnabled(boolean accessLogEnabled) {
+    this.accessLogEnabled = accessLogEnabled;
+  }
+
+  public double getAccessLogSampleRate() {
+    return accessLogSampleRate;
+  }
+
+  public void setAccessLogSampleRate(double accessLogSampleRate) {
+    this.accessLogSampleRate = accessLogSampleRate;
+  }
+
+  public long getAccessLogSlowMillis() {
+    return accessLogSlowMillis;
+  }
+
+  public void setAccessLogSlowMillis(long accessLogSlowMillis) {
+    this.accessLogSlowMillis = accessLogSlowMillis;
+  }
+
+  public int getAccessLogBufferSize() {
+    return accessLogBufferSize;
+  }
+
+  public void setAccessLogBufferSize(int accessLogBufferSize) {
+    this.accessLogBufferSize = accessLogBufferSize;
+  }
+
+  public boolean isNonBlockingEnabled() {
+    return nonBlockingEnabled;
+  }
+
+  public void setNonBlockingEnabled(boolean nonBlockingEnabled) {
+    this.nonBlockingEnabled = nonBlockingEnabled;
+  }
+
+  public long getNonBlockingBudgetMicros() {
+    return nonBlockingBudgetMicros;
+  }
+
+  public void setNonBlockingBudgetMicros(long nonBlockingBudgetMicros) {
+    this.nonBlockingBudgetMicros = nonBlockingBudgetMicros;
+  }
+
+  public boolean isCancelInterrupt() {
+    return cancelInterrupt;
+  }
+
+  public void setCancelInterrupt(boolean cancelInterrupt) {
+    this.cancelInterrupt = cancelInterrupt;
+  }
+
+  public long getNonBlockingCheckIntervalMillis() {
+    return nonBlockingCheckIntervalMillis;
+  }
+
+  public void setNonBlockingCheckIntervalMillis(long nonBlockingCheckIntervalMillis) {
+    this.nonBlockingCheckIntervalMillis = nonBlockingCheckIntervalMillis;
+  }
+}
@@ -0,0 +1,186 @@
+package com.github.hippo.server;
+
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.annotation.AnnotationUtils;
+
+import com.github.hippo.annotation.HippoBulkhead;
+import com.github.hippo.enums.HippoPriorityEnum;
+
+/**
+ * 服务端业务线程池,按舱壁隔离
+ *
+ * 没有声明舱壁的方法都在default舱壁里执行;声明了的(@HippoBulkhead或者hippo.server.bulkhead.routes)在自己的舱壁里执行,
+ * 一个方法慢或者被打满,只会让它自己的舱壁返回server busy
+ *
+ * @author sl
+ *
+ */
+public enum HippoServerExecutor {
+  INSTANCE;
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(HippoServerExecutor.class);
+
+  public static final String DEFAULT_BULKHEAD = "default";
+
+  private volatile HippoServerConfig hippoServerConfig;
+  private volatile HippoServerBulkhead defaultBulkhead;
+  private final Map<String, HippoServerBulkhead> bulkheads = new ConcurrentHashMap<>();
+  // 接口名或者接口名.方法名 -> 舱壁名
+  private Map<String, String> routes = Collections.emptyMap();
+  // 舱壁名 -> {线程数,队列长度}
+  private Map<String, int[]> pools = Collections.emptyMap();
+
+  synchronized void configure(HippoServerConfig hippoServerConfig) {
+    if (defaultBulkhead != null) {
+      return;
+    }
+    this.hippoServerConfig = hippoServerConfig;
+    this.routes = parse(hippoServerConfig.getBulkheadRoutes());
+    Map<String, int[]> sizes = new HashMap<>();
+    parse(hippoServerConfig.getBulkheadPools()).forEach((name, value) -> {
+      String[] split = value.split(",");
+      sizes.put(name, new int[] {NumberUtils.toInt(split[0].trim(), 0),
+          split.length > 1 ? NumberUtils.toInt(split[1].trim(), 0) : 0});
+    });
+    this.pools = sizes;
+    defaultBulkhead = create(DEFAULT_BULKHEAD, hippoServerConfig.resolvePoolThreads(),
+        hippoServerConfig.resolveQueueCapacity());
+  }
+
+  private static Map<String, String> parse(String config) {
+    Map<String, String> map = new HashMap<>();
+    if (StringUtils.isBlank(config)) {
+      return map;
+    }
+    for (String entry : config.split(";")) {
+      String[] split = entry.split("=", 2);
+      if (split.length == 2 && StringUtils.isNotBlank(split[0])
+          && StringUtils.isNotBlank(split[1])) {
+        map.put(split[0].trim(), split[1].trim());
+      }
+    }
+    return map;
+  }
+
+  private HippoServerBulkhead defaultBulkhead() {
+    HippoServerBulkhead bulkhead = defaultBulkhead;
+    if (bulkhead == null) {
+      // 没有经过HippoServerInit初始化时用默认配置(不开启CoDel)
+      configure(new HippoServerConfig());
+      bulkhead = defaultBulkhead;
+    }
+    return bulkhead;
+  }
+
+  private HippoServerBulkhead create(String name, int threads, int queueCapacity) {
+    HippoServerConfig config = hippoServerConfig;
+    HippoServerBulkhead bulkhead = new HippoServerBulkhead(name, threads, queueCapacity,
+        "discardOldest".equalsIgnoreCase(config.getQueuePolicy()), config.getQueueTargetMillis(),
+        config.getQueueIntervalMillis(), config.getPriorityAgingMillis());
+    LOGGER.info("hippo server舱壁[{}]:threads:{},queueCapacity:{},policy:{},codelTargetMillis:{}",
+        name, threads, queueCapacity, config.getQueuePolicy(), config.getQueueTargetMillis());
+    long maxAgingMillis = (HippoPriorityEnum.values().length - 1) * config.getPriorityAgingMillis();
+    if (config.getQueueTargetMillis() > 0 && maxAgingMillis >= config.getQueueIntervalMillis()) {
+      LOGGER.warn("hippo server舱壁[{}]:最低优先级最多晚{}毫秒出队,不小于CoDel interval {}毫秒,"
+          + "低优先级的请求可能在老化之前就被拒绝", name, maxAgingMillis,
+          config.getQueueIntervalMillis());
+    }
+    return bulkhead;
+  }
+
+  /**
+   * 启动时为每个服务方法确定舱壁:配置的接口.方法 > 方法上的注解 > 配置的接口 > 类上的注解 > default
+   *
+   * @param interfaceClass @HippoService接口
+   * @param implClass 实现类
+   * @param implMethod 实现类的方法
+   * @return 舱壁
+   */
+  HippoServerBulkhead resolveBulkhead(Class<?> interfaceClass, Class<?> implClass,
+      Method implMethod) {
+    HippoServerBulkhead fallback = defaultBulkhead();
+    HippoBulkhead onMethod = AnnotationUtils.findAnnotation(implMethod, HippoBulkhead.class);
+    HippoBulkhead onClass = AnnotationUtils.findAnnotation(implClass, HippoBulkhead.class);
+    String methodName = implMethod.getName();
+    String name = route(interfaceClass.getSimpleName() + "." + methodName,
+        interfaceClass.getName() + "." + methodName);
+    if (name == null && onMethod != null) {
+      name = onMethod.value();
+    }
+    if (name == null) {
+      name = route(interfaceClass.getSimpleName(), interfaceClass.getName());
+    }
+    if (name == null && onClass != null) {
+      name = onClass.value();
+    }
+    if (StringUtils.isBlank(name) || DEFAULT_BULKHEAD.equals(name.trim())) {
+      return fallback;
+    }
+    // 同名舱壁共用一个线程池,大小以第一次创建时为准
+    return bulkheads.computeIfAbsent(name.trim(), key -> {
+      HippoBulkhead declared = onMethod != null && key.equals(onMethod.value()) ? onMethod
+          : onClass != null && key.equals(onClass.value()) ? onClass : null;
+      int[] size = pools.get(key);
+      int threads = size != null && size[0] > 0 ? size[0]
+          : declared != null && declared.threads() > 0 ? declared.threads()
+              : Runtime.getRuntime().availableProcessors();
+      int queueCapacity = size != null && size[1] > 0 ? size[1]
+          : declared != null && declared.queueCapacity() > 0 ? declared.queueCapacity()
+              : hippoServerConfig.resolveQueueCapacity();
+      return create(key, threads, queueCapacity);
+    });
+  }
+
+  private String route(String simpleName, String name) {
+    String route = routes.get(simpleName);
+    return route != null ? route : routes.get(name);
+  }
+
+  /**
+   * @param serviceMethod 要调用的方法,找不到方法时为null,在default舱壁里返回错误
+   * @param task task
+   */
+  void execute(HippoServiceMethod serviceMethod, HippoServerTask task) {
+    HippoServerBulkhead bulkhead = serviceMethod == null ? null : serviceMethod.getBulkhead();
+    (bulkhead == null ? defaultBulkhead() : bulkhead).execute(task);
+  }
+
+  /**
+   * @return 客户端取消请求时是否中断正在执行的业务线程
+   */
+  boolean isCancelInterrupt() {
+    HippoServerConfig config = hippoServerConfig;
+    return config != null && config.isCancelInterrupt();
+  }
+
+  void shutdown() {
+    HippoServerBulkhead bulkhead = defaultBulkhead;
+    if (bulkhead != null) {
+      bulkhead.shutdown();
+    }
+    bulkheads.values().forEach(HippoServerBulkhead::shutdown);
+  }
+
+  /**
+   * 所有舱壁的运行指标
+   *
+   * @return 舱壁名 -> 舱壁
+   */
+  public Map<String, HippoServerBulkhead> getBulkheads() {
+    Map<String, HippoServerBulkhead> result = new HashMap<>(bulkheads);
+    HippoServerBulkhead bulkhead = defaultBulkhead;
+    if (bulkhead != null) {
+      result.put(DEFAULT_BULKHEAD, bulkhead);
+    }
+    return result;
+  }
+}
@@ -1,22 +1,29 @@
 package com.github.hippo.server;
 
 import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
-import org.apache.commons.lang3.builder.ToStringBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.cglib.reflect.FastClass;
-import org.springframework.cglib.reflect.FastMethod;
-import org.springframework.core.LocalVariableTableParameterNameDiscoverer;
 
+import com.github.hippo.bean.HippoCancel;
+import com.github.hippo.bean.HippoGoAway;
+import com.github.hippo.bean.HippoHeartbeat;
 import com.github.hippo.bean.HippoRequest;
+import com.github.hippo.bean.HippoRequestBatch;
 import com.github.hippo.bean.HippoResponse;
+import com.github.hippo.bean.HippoResponseBatch;
 import com.github.hippo.chain.ChainThreadLocal;
+import com.github.hippo.chain.HippoCancelToken;
+import com.github.hippo.enums.HippoPriorityEnum;
 import com.github.hippo.enums.HippoRequestEnum;
 import com.github.hippo.exception.HippoRequestTypeNotExistException;
 import com.github.hippo.util.FastJsonConvertUtils;
@@ -24,6 +31,10 @@ import com.github.hippo.util.FastJsonConvertUtils;
 import io.netty.channel.ChannelHandler.Sharable;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.group.ChannelGroup;
+import io.netty.channel.group.DefaultChannelGroup;
+import io.netty.util.AttributeKey;
+import io.netty.util.concurrent.GlobalEventExecutor;
 
 /**
  * netty handler处理类
@@ -35,24 +46,35 @@ import io.netty.channel.SimpleChannelInboundHandler;
 public class HippoServerHandler extends SimpleChannelInboundHandler<HippoRequest> {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(HippoServerHandler.class);
-  private static final ExecutorService pool =
-      Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors() * 3 + 2);
+  // 所有客户端连接,下线时用来发GOAWAY
+  private static final ChannelGroup channels =
+      new DefaultChannelGroup(GlobalEventExecutor.INSTANCE);
+  // 已经收到还没返回的请求数,响应写出去(或者写失败)之后才减
+  private static final AtomicInteger inFlight = new AtomicInteger(0);
+  private static final ReentrantLock drainLock = new ReentrantLock();
+  // inFlight减到0时通知awaitInFlight
+  private static final Condition drained = drainLock.newCondition();
+  // 每个连接上可以被客户端取消的请求
+  private static final AttributeKey<HippoCancelRegistry> CANCEL_REGISTRY =
+      AttributeKey.valueOf("hippoCancelRegistry");
 
-  private static final ExecutorService heartBeatPool = Executors.newSingleThreadExecutor();
-
-  private void handle(ChannelHandlerContext ctx, HippoRequest request) {
-    long start = System.currentTimeMillis();
+  private HippoResponse handle(HippoRequest request, HippoServiceMethod serviceMethod,
+      long deadlineNanos, HippoCancelToken cancelToken) {
+    long start = System.nanoTime();
     HippoResponse response = new HippoResponse();
-    response.setChainId(request.getChainId());
+    response.setChainIdHigh(request.getChainIdHigh());
+    response.setChainIdLow(request.getChainIdLow());
     response.setChainOrder(request.getChainOrder());
     response.setServiceName(request.getServiceName());
     HippoRequestEnum hippoRequestEnum = HippoRequestEnum.getByType(request.getRequestType());
-    if (hippoRequestEnum != HippoRequestEnum.PING) {
-      LOGGER.info("hippo in param:{}", ToStringBuilder.reflectionToString(request));
-    }
     try {
-      ChainThreadLocal.INSTANCE.setChainId(request.getChainId());
+      ChainThreadLocal.INSTANCE.setChainId(request.getChainIdHigh(), request.getChainIdLow());
       ChainThreadLocal.INSTANCE.incChainOrder(request.getChainOrder());
+      ChainThreadLocal.INSTANCE.setDeadline(deadlineNanos);
+      ChainThreadLocal.INSTANCE.setCancelToken(cancelToken);
+      // 非NORMAL的优先级传给下游调用,比如批量任务发起的调用链都是低优先级
+      HippoPriorityEnum priority = HippoPriorityEnum.getByPriority(request.getPriority());
+      ChainThreadLocal.INSTANCE.setPriority(priority == HippoPriorityEnum.NORMAL ? null : priority);
       response.setRequestId(request.getRequestId());
       if (hippoRequestEnum == null) {
         response.setError(true);
@@ -60,14 +82,12 @@ public class HippoServerHandler extends SimpleChannelInboundHandler<HippoRequest
             "HippoRequest requestType not exist.current requestType is:"
                 + request.getRequestType()));
       } else if (hippoRequestEnum == HippoRequestEnum.API) {
-        response.setResult(apiProcess(request));
+        response.setResult(apiProcess(request, serviceMethod));
       } else if (hippoRequestEnum == HippoRequestEnum.RPC) {
-        response.setResult(rpcProcess(request));
-      } else if (hippoRequestEnum == HippoRequestEnum.PING) {
-        response.setResult("ping success");
-        response.setRequestId("-99");
+        response.setResult(rpcProcess(request, serviceMethod));
       }
-    } catch (Exception e1) {
+    } catch (Throwable e1) {
+      // Error也要转成响应返回,否则调用方只能等到超时
       LOGGER.error("handle error:" + request, e1);
       if (e1 instanceof InvocationTargetException) {
         response.setThrowable(e1.getCause());
@@ -79,107 +99,244 @@ public class HippoServerHandler extends SimpleChannelInboundHandler<HippoRequest
       response.setError(true);
     }
     ChainThreadLocal.INSTANCE.clearTL();
-    if (hippoRequestEnum != HippoRequestEnum.PING) {
-      LOGGER.info("hippo out result:{},耗时:{}毫秒", response, System.currentTimeMillis() - start);
-    }
+    HippoAccessLog.INSTANCE.record(request, response, System.nanoTime() - start);
+    return response;
+  }
 
-    ctx.writeAndFlush(response);
+  /**
+   * 在io线程上找到要调用的方法,用来决定在哪个舱壁里执行
+   * 
+   * @return 找不到返回null,由rpcProcess/apiProcess返回NoSuchMethodException
+   */
+  private static HippoServiceMethod resolveMethod(HippoRequest request) {
+    if (request.getRequestType() == HippoRequestEnum.API.getType()) {
+      /* 先不管重载 */
+      HippoServiceMethod[] methods =
+          HippoServiceCache.INSTANCE.getMethods(request.getClassName(), request.getMethodName());
+      return methods == null || methods.length == 0 ? null : methods[0];
+    }
+    return HippoServiceCache.INSTANCE.getMethod(request.getClassName(), request.getMethodName(),
+        request.getParameterTypes());
   }
 
-  private Object rpcProcess(HippoRequest paras) throws InvocationTargetException {
-    Object serviceBean = HippoServiceCache.INSTANCE.getImplObjectMap().get(paras.getClassName());
-    FastClass serviceFastClass = FastClass.create(serviceBean.getClass());
-    FastMethod serviceFastMethod =
-        serviceFastClass.getMethod(paras.getMethodName(), paras.getParameterTypes());
-    return serviceFastMethod.invoke(serviceBean, paras.getParameters());
+  private Object rpcProcess(HippoRequest paras, HippoServiceMethod serviceMethod)
+      throws Exception {
+    if (serviceMethod == null) {
+      throw new NoSuchMethodException(paras.getClassName() + "." + paras.getMethodName()
+          + Arrays.toString(paras.getParameterTypes()));
+    }
+    return serviceMethod.invoke(paras.getParameters());
   }
 
   /**
    * apiProcess 不可能有2个Dto的接口,但是可能有多个基础类型 test(User user,Address add)//不会有这种情况,有也不支持 test(String
    * userName,String pwd)//会有
    * 
+   * 参数名/类型在启动时已经解析好,这里只做一次json绑定
+   * 
    * @param paras
    * @return
    * @throws Exception
    */
-  private Object apiProcess(HippoRequest paras) throws Exception {/* 先不管重载 */
-
-    Method[] methods =
-        HippoServiceCache.INSTANCE.getInterfaceMap().get(paras.getClassName()).getDeclaredMethods();
-    // 接口定义的method
-    for (Method method : methods) {
-      if (!method.getName().equals(paras.getMethodName())) {
-        continue;
-      }
-      Object[] paramDto = null;
-
-      Class<?>[] parameterTypes = method.getParameterTypes();
-
-      Object serviceBean = HippoServiceCache.INSTANCE.getImplObjectMap().get(paras.getClassName());
-      FastClass serviceFastClass = FastClass.create(serviceBean.getClass());
-      FastMethod serviceFastMethod = serviceFastClass.getMethod(method.getName(), parameterTypes);
+  private Object apiProcess(HippoRequest paras, HippoServiceMethod serviceMethod)
+      throws Exception {
+    if (serviceMethod == null) {
+      throw new NoSuchMethodException(paras.getMethodName());
+    }
+    Object[] args = serviceMethod.bindApiParameters(paras.getParameters());
+    // 拿到返回
+    return FastJsonConvertUtils.cleanseToObject(serviceMethod.invoke(args));
+  }
 
-      LocalVariableTableParameterNameDiscoverer u = new LocalVariableTableParameterNameDiscoverer();
-      String[] parameterNames = u.getParameterNames(serviceFastMethod.getJavaMethod());
+  @Override
+  public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+    LOGGER.error("netty server error", cause.fillInStackTrace());
+    ctx.close();
+  }
 
-      Object[] objects = paras.getParameters();
 
-      if (parameterTypes.length == 0 || objects == null) {// 无参数
-        paramDto = null;
-      } else if (parameterTypes.length == 1) {// 一个参数(是否是Dto)
-        Class<?> parameterType = parameterTypes[0];
-        paramDto = new Object[1];
-        // 非自定义dto就是java原生类了
-        if (isJavaClass(parameterType)) {
-          paramDto[0] = getMap(objects).get(parameterNames[0]);
-        } else {
-          paramDto[0] = FastJsonConvertUtils.jsonToJavaObject((String) objects[0], parameterType);
-        }
+  @Override
+  public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+    // 心跳帧在io线程直接回pong(带回客户端的时间戳),不进业务线程池
+    if (msg instanceof HippoHeartbeat) {
+      HippoHeartbeat heartbeat = (HippoHeartbeat) msg;
+      if (!heartbeat.isPong()) {
+        ctx.writeAndFlush(HippoHeartbeat.pong(heartbeat.getTimestamp()));
       }
-      // 多参
-      else {
-        if (parameterNames.length != 0) {
-          paramDto = new Object[parameterNames.length];
-          int index = 0;
-          Map<String, Object> map = getMap(objects);
-          for (String parameter : parameterNames) {
-            paramDto[index] = map.get(parameter);
-            index++;
-          }
-        }
+      return;
+    }
+    if (msg instanceof HippoRequestBatch) {
+      handleBatch(ctx, (HippoRequestBatch) msg);
+      return;
+    }
+    if (msg instanceof HippoCancel) {
+      HippoCancelRegistry registry = ctx.channel().attr(CANCEL_REGISTRY).get();
+      if (registry != null) {
+        registry.cancel(((HippoCancel) msg).getRequestId());
       }
-      // 拿到返回
-      return FastJsonConvertUtils.cleanseToObject(serviceFastMethod.invoke(serviceBean, paramDto));
+      return;
     }
-    throw new NoSuchMethodException(paras.getMethodName());
+    super.channelRead(ctx, msg);
   }
 
-  private Map<String, Object> getMap(Object[] objects) {
-    if (objects.length == 1) {
-      return FastJsonConvertUtils.jsonToMap((String) objects[0]);
-    } else {
-      return new HashMap<>();
-    }
+  @Override
+  public void channelActive(ChannelHandlerContext ctx) throws Exception {
+    channels.add(ctx.channel());
+    ctx.channel().attr(CANCEL_REGISTRY).set(new HippoCancelRegistry());
+    super.channelActive(ctx);
   }
 
   @Override
-  public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
-    LOGGER.error("netty server error", cause.fillInStackTrace());
-    ctx.close();
+  public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+    HippoCancelRegistry registry = ctx.channel().attr(CANCEL_REGISTRY).get();
+    if (registry != null) {
+      registry.cancelAll();
+    }
+    super.channelInactive(ctx);
   }
 
-
   @Override
   protected void channelRead0(ChannelHandlerContext ctx, HippoRequest request) throws Exception {
-    if (request != null && request.getRequestType() == HippoRequestEnum.PING.getType()) {
-      // 单独的线程去执行心跳操作,业务请求不影响心跳
-      heartBeatPool.execute(() -> handle(ctx, request));
-    } else {
-      pool.execute(() -> handle(ctx, request));
+    inFlight.incrementAndGet();
+    dispatch(ctx, request, response -> writeAndRelease(ctx, response, 1));
+  }
+
+  /**
+   * 写出响应,写完之后再把请求从inFlight里去掉,优雅下线时不会关掉还没写出去的响应
+   * 
+   * @param msg 为null表示不用返回(被客户端取消了)
+   * @param count 这个响应对应的请求数
+   */
+  private static void writeAndRelease(ChannelHandlerContext ctx, Object msg, int count) {
+    if (msg == null) {
+      release(count);
+      return;
     }
+    ctx.writeAndFlush(msg).addListener(f -> release(count));
   }
 
-  private boolean isJavaClass(Class<?> clz) {
-    return clz != null && clz.getClassLoader() == null;
+  private static void release(int count) {
+    if (inFlight.addAndGet(-count) == 0) {
+      drainLock.lock();
+      try {
+        drained.signalAll();
+      } finally {
+        drainLock.unlock();
+      }
+    }
+  }
+
+  /**
+   * @HippoNonBlocking方法直接在当前io线程上执行,其他方法进对应的舱壁
+   * 
+   * @param request request
+   * @param responder 处理完,被拒绝或者被取消时调用,只会调用一次;被客户端取消时参数为null
+   */
+  private void dispatch(ChannelHandlerContext ctx, HippoRequest request,
+      Consumer<HippoResponse> responder) {
+    HippoServiceMethod serviceMethod = resolveMethod(request);
+    // timeout是客户端发送时剩下的时间,按收到的时间算deadline,不依赖两边的时钟一致
+    long deadlineNanos = request.getTimeout() > 0
+        ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(request.getTimeout()) : 0;
+    if (serviceMethod != null && serviceMethod.isNonBlocking()) {
+      // 在io线程上执行完之前不会读到取消帧,不需要取消标记
+      HippoResponse response;
+      try {
+        response = HippoInlineWatchdog.INSTANCE.invoke(serviceMethod,
+            () -> handle(request, serviceMethod, deadlineNanos, null));
+      } catch (Throwable t) {
+        LOGGER.error("handle error:" + request, t);
+        response = HippoServerTask.errorResponse(request, t);
+      }
+      responder.accept(response);
+      return;
+    }
+    HippoCancelToken cancelToken =
+        new HippoCancelToken(HippoServerExecutor.INSTANCE.isCancelInterrupt());
+    HippoCancelRegistry registry = ctx.channel().attr(CANCEL_REGISTRY).get();
+    long requestId = request.getRequestId();
+    HippoServerTask task = new HippoServerTask(request, deadlineNanos, cancelToken,
+        () -> handle(request, serviceMethod, deadlineNanos, cancelToken), response -> {
+          if (registry != null) {
+            registry.remove(requestId);
+          }
+          // 客户端已经不要结果了,执行完也不返回
+          responder.accept(cancelToken.isCancelled() ? null : response);
+        });
+    if (registry != null) {
+      registry.put(requestId, task);
+    }
+    HippoServerExecutor.INSTANCE.execute(serviceMethod, task);
+  }
+
+  /**
+   * 通知所有客户端不要再发新请求
+   */
+  static void goAway() {
+    channels.writeAndFlush(HippoGoAway.INSTANCE);
+  }
+
+  /**
+   * 等待已经收到的请求处理完
+   * 
+   * @param timeoutMillis 最多等待的毫秒数
+   * @return 是否全部处理完
+   * @throws InterruptedException InterruptedException
+   */
+  static boolean awaitInFlight(long timeoutMillis) throws InterruptedException {
+    long nanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    drainLock.lock();
+    try {
+      while (inFlight.get() > 0) {
+        if (nanos <= 0) {
+          return false;
+        }
+        nanos = drained.awaitNanos(nanos);
+      }
+      return true;
+    } finally {
+      drainLock.unlock();
+    }
+  }
+
+  static int getInFlight() {
+    return inFlight.get();
+  }
+
+  /**
+   * 关闭所有连接和业务线程池
+   */
+  static void shutdown() {
+    channels.close().awaitUninterruptibly();
+    HippoServerExecutor.INSTANCE.shutdown();
+  }
+
+  /**
+   * 批量请求拆开后并行处理,全部处理完(或者被拒绝,被取消)再用一个批量响应帧返回,被取消的不返回
+   * 
+   * @param ctx ctx
+   * @param batch 批量请求
+   */
+  private void handleBatch(ChannelHandlerContext ctx, HippoRequestBatch batch) {
+    List<HippoRequest> requests = batch.getRequests();
+    if (requests == null || requests.isEmpty()) {
+      return;
+    }
+    HippoResponse[] responses = new HippoResponse[requests.size()];
+    AtomicInteger remaining = new AtomicInteger(responses.length);
+    inFlight.addAndGet(responses.length);
+    for (int i = 0; i < responses.length; i++) {
+      int index = i;
+      dispatch(ctx, requests.get(i), response -> {
+        responses[index] = response;
+        if (remaining.decrementAndGet() == 0) {
+          // 整批一起写出,写完再把整批从inFlight里去掉
+          List<HippoResponse> list =
+              Arrays.stream(responses).filter(Objects::nonNull).collect(Collectors.toList());
+          writeAndRelease(ctx, list.isEmpty() ? null : new HippoResponseBatch(list),
+              responses.length);
+        }
+      });
+    }
   }
 }
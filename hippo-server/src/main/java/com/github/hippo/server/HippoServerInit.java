@@ -1,15 +1,19 @@
 package com.github.hippo.server;
 
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.apache.commons.collections.MapUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationContextAware;
 import org.springframework.core.annotation.Order;
@@ -25,13 +29,18 @@ import com.github.hippo.exception.HippoServiceException;
 import com.github.hippo.govern.ServiceGovern;
 
 import io.netty.bootstrap.ServerBootstrap;
-import io.netty.channel.ChannelFuture;
+import io.netty.channel.Channel;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
 import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.util.concurrent.DefaultThreadFactory;
 
 /**
  * 服务注册以及启动netty server
@@ -41,11 +50,25 @@ import io.netty.channel.socket.nio.NioServerSocketChannel;
  */
 @Component
 @Order
-public class HippoServerInit implements ApplicationContextAware, InitializingBean {
+public class HippoServerInit implements ApplicationContextAware, InitializingBean, DisposableBean {
   private static final Logger LOG = LoggerFactory.getLogger(HippoServerInit.class);
   @Autowired
   private ServiceGovern serviceGovern;
 
+  /**
+   * 下线时等待处理中请求的最长毫秒数
+   */
+  @Value("${hippo.server.drainTimeoutMillis:10000}")
+  private long drainTimeoutMillis;
+
+  @Autowired
+  private HippoServerConfig hippoServerConfig;
+
+  private final List<Channel> serverChannels = new CopyOnWriteArrayList<>();
+  private EventLoopGroup bossGroup;
+  private EventLoopGroup workerGroup;
+  private volatile boolean stopping = false;
+
   private Set<String> registryNames = new HashSet<>();
 
   @Override
@@ -54,6 +77,9 @@ public class HippoServerInit implements ApplicationContextAware, InitializingBea
     if (MapUtils.isEmpty(serviceBeanMap)) {
       return;
     }
+    // 注册方法时要确定每个方法的舱壁以及是否在io线程上执行
+    HippoServerExecutor.INSTANCE.configure(hippoServerConfig);
+    HippoInlineWatchdog.INSTANCE.configure(hippoServerConfig);
     Map<String, Object> implObjectMap = HippoServiceCache.INSTANCE.getImplObjectMap();
     Map<String, Class<?>> interfaceMap = HippoServiceCache.INSTANCE.getInterfaceMap();
     for (Object serviceBean : serviceBeanMap.values()) {
@@ -75,6 +101,8 @@ public class HippoServerInit implements ApplicationContextAware, InitializingBea
         implObjectMap.put(simpleName, serviceBean);
         implObjectMap.put(name, serviceBean);
         interfaceMap.put(simpleName, class1);
+        HippoServiceCache.INSTANCE.registerMethods(new String[] {simpleName, name}, class1,
+            serviceBean);
         registryNames.add(annotation.serviceName());
       }
     }
@@ -86,6 +114,7 @@ public class HippoServerInit implements ApplicationContextAware, InitializingBea
     if (registryNames.size() > 1) {
       throw new IllegalAccessError("多个HippoService的serviceName必须一样[" + registryNames + "]");
     }
+    HippoAccessLog.INSTANCE.configure(hippoServerConfig);
     new Thread(() -> {
       try {
         Thread.sleep(1);
@@ -93,11 +122,22 @@ public class HippoServerInit implements ApplicationContextAware, InitializingBea
         e1.printStackTrace();
       }
       int port = serviceGovern.register(registryNames.iterator().next());
-      EventLoopGroup bossGroup = new NioEventLoopGroup(1);
-      EventLoopGroup workerGroup = new NioEventLoopGroup(1);
+      boolean epoll = hippoServerConfig.isEpoll() && Epoll.isAvailable();
+      if (hippoServerConfig.isEpoll() && !epoll) {
+        LOG.info("epoll不可用,使用nio:{}", String.valueOf(Epoll.unavailabilityCause()));
+      }
+      boolean reusePort = hippoServerConfig.isReusePort() && epoll;
+      if (hippoServerConfig.isReusePort() && !reusePort) {
+        LOG.warn("SO_REUSEPORT需要epoll,当前使用nio,只绑定一个监听socket");
+      }
+      int acceptThreads = hippoServerConfig.resolveAcceptThreads(reusePort);
+      int workerThreads = hippoServerConfig.resolveWorkerThreads();
+      bossGroup = createGroup(epoll, acceptThreads, "hippo-server-boss");
+      workerGroup = createGroup(epoll, workerThreads, "hippo-server-worker");
       try {
         ServerBootstrap bootstrap = new ServerBootstrap();
-        bootstrap.group(bossGroup, workerGroup).channel(NioServerSocketChannel.class)
+        bootstrap.group(bossGroup, workerGroup)
+            .channel(epoll ? EpollServerSocketChannel.class : NioServerSocketChannel.class)
             .childHandler(new ChannelInitializer<SocketChannel>() {
               @Override
               public void initChannel(SocketChannel channel) throws Exception {
@@ -105,16 +145,78 @@ public class HippoServerInit implements ApplicationContextAware, InitializingBea
                     .addLast(new HippoEncoder(HippoResponse.class))
                     .addLast(new HippoServerHandler());
               }
-            }).option(ChannelOption.SO_BACKLOG, 128).option(ChannelOption.TCP_NODELAY, true);
-
-        ChannelFuture future = bootstrap.bind(port).sync();
-        future.channel().closeFuture().sync();
+            }).option(ChannelOption.SO_BACKLOG, hippoServerConfig.getBacklog())
+            .childOption(ChannelOption.TCP_NODELAY, true);
+        if (reusePort) {
+          bootstrap.option(EpollChannelOption.SO_REUSEPORT, true);
+        }
+        if (hippoServerConfig.getSendBufferBytes() > 0) {
+          bootstrap.childOption(ChannelOption.SO_SNDBUF, hippoServerConfig.getSendBufferBytes());
+        }
+        if (hippoServerConfig.getReceiveBufferBytes() > 0) {
+          bootstrap.childOption(ChannelOption.SO_RCVBUF,
+              hippoServerConfig.getReceiveBufferBytes());
+        }
+        // 开启SO_REUSEPORT时每个accept线程绑定一个监听socket,由内核分发新连接
+        for (int i = 0; i < acceptThreads; i++) {
+          serverChannels.add(bootstrap.bind(port).sync().channel());
+        }
+        LOG.info("hippo server启动,port:{},transport:{},acceptThreads:{},workerThreads:{}", port,
+            epoll ? "epoll" : "nio", acceptThreads, workerThreads);
+        for (Channel channel : serverChannels) {
+          channel.closeFuture().sync();
+        }
       } catch (Exception e) {
         LOG.error("hippoServer error", e);
       } finally {
-        workerGroup.shutdownGracefully();
-        bossGroup.shutdownGracefully();
+        // 正常下线时由destroy负责关闭
+        if (!stopping) {
+          serverChannels.forEach(Channel::close);
+          workerGroup.shutdownGracefully();
+          bossGroup.shutdownGracefully();
+        }
       }
     }).start();
   }
+
+  private static EventLoopGroup createGroup(boolean epoll, int threads, String name) {
+    DefaultThreadFactory threadFactory = new DefaultThreadFactory(name);
+    return epoll ? new EpollEventLoopGroup(threads, threadFactory)
+        : new NioEventLoopGroup(threads, threadFactory);
+  }
+
+  /**
+   * 优雅下线:注册中心标记下线 -> 通知客户端(GOAWAY)不再发新请求 -> 停止接收新连接 ->
+   * 等待处理中的请求完成(最多drainTimeoutMillis) -> 关闭连接
+   */
+  @Override
+  public void destroy() throws Exception {
+    if (registryNames.isEmpty()) {
+      return;
+    }
+    stopping = true;
+    String serviceName = registryNames.iterator().next();
+    LOG.info("hippo server开始下线:{}", serviceName);
+    try {
+      serviceGovern.unregister(serviceName);
+    } catch (Exception e) {
+      LOG.error("unregister error:" + serviceName, e);
+    }
+    HippoServerHandler.goAway();
+    for (Channel channel : serverChannels) {
+      channel.close().awaitUninterruptibly();
+    }
+    if (!HippoServerHandler.awaitInFlight(drainTimeoutMillis)) {
+      LOG.warn("hippo server下线等待超时,还有{}个请求没有处理完", HippoServerHandler.getInFlight());
+    }
+    HippoServerHandler.shutdown();
+    HippoAccessLog.INSTANCE.shutdown();
+    if (workerGroup != null) {
+      workerGroup.shutdownGracefully();
+    }
+    if (bossGroup != null) {
+      bossGroup.shutdownGracefully();
+    }
+    LOG.info("hippo server下线完成:{}", serviceName);
+  }
 }
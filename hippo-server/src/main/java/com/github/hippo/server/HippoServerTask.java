@@ -0,0 +1,124 @@
+package com.github.hippo.server;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import com.github.hippo.bean.HippoRequest;
+import com.github.hippo.bean.HippoResponse;
+import com.github.hippo.chain.HippoCancelToken;
+import com.github.hippo.enums.HippoPriorityEnum;
+import com.github.hippo.exception.HippoReadTimeoutException;
+import com.github.hippo.exception.HippoServerBusyException;
+
+/**
+ * 业务线程池里的一个请求,不论被执行,被拒绝还是被取消,responder都只会调用一次
+ * 
+ * 被客户端取消时responder收到null,不用返回响应
+ *
+ * @author sl
+ *
+ */
+final class HippoServerTask implements Runnable {
+
+  private final HippoRequest request;
+  private final Supplier<HippoResponse> handler;
+  private final Consumer<HippoResponse> responder;
+  private final long enqueueNanos = System.nanoTime();
+  // 调用方的deadline(System.nanoTime()时间),0表示没有
+  private final long deadlineNanos;
+  private final HippoCancelToken cancelToken;
+  private final HippoPriorityEnum priority;
+  // 执行这个请求的舱壁,提交时设置
+  private volatile HippoServerBulkhead bulkhead;
+
+  HippoServerTask(HippoRequest request, long deadlineNanos, HippoCancelToken cancelToken,
+      Supplier<HippoResponse> handler, Consumer<HippoResponse> responder) {
+    this.request = request;
+    this.deadlineNanos = deadlineNanos;
+    this.cancelToken = cancelToken;
+    this.priority = HippoPriorityEnum.getByPriority(request.getPriority());
+    this.handler = handler;
+    this.responder = responder;
+  }
+
+  @Override
+  public void run() {
+    if (cancelToken.isCancelled()) {
+      responder.accept(null);
+      return;
+    }
+    long now = System.nanoTime();
+    long delayNanos = now - enqueueNanos;
+    // 调用方已经超时放弃了,执行了结果也没人要
+    if (deadlineNanos != 0 && now - deadlineNanos >= 0) {
+      fail(new HippoReadTimeoutException("[" + request.getServiceName() + "]deadline已过,排队"
+          + TimeUnit.NANOSECONDS.toMillis(delayNanos) + "毫秒,服务端未执行"));
+      return;
+    }
+    if (bulkhead.shouldShed(priority, delayNanos)) {
+      reject("排队" + TimeUnit.NANOSECONDS.toMillis(delayNanos) + "毫秒");
+      return;
+    }
+    HippoResponse response;
+    cancelToken.bind();
+    try {
+      response = handler.get();
+    } catch (Throwable t) {
+      // handler自己会把业务异常转成响应,这里兜住漏出来的Error,保证responder一定被调用
+      response = errorResponse(request, t);
+    } finally {
+      cancelToken.unbind();
+    }
+    responder.accept(response);
+  }
+
+  HippoPriorityEnum getPriority() {
+    return priority;
+  }
+
+  long getEnqueueNanos() {
+    return enqueueNanos;
+  }
+
+  void setBulkhead(HippoServerBulkhead bulkhead) {
+    this.bulkhead = bulkhead;
+  }
+
+  /**
+   * 客户端取消:还在队列里的直接移除,不占队列位置;正在执行的由取消标记通知
+   */
+  void cancel() {
+    cancelToken.cancel();
+    HippoServerBulkhead current = bulkhead;
+    if (current != null && current.remove(this)) {
+      responder.accept(null);
+    }
+  }
+
+  /**
+   * 不执行,直接返回server busy
+   */
+  void reject(String reason) {
+    fail(new HippoServerBusyException("[" + request.getServiceName() + "]server busy:" + reason));
+  }
+
+  private void fail(Throwable throwable) {
+    responder.accept(errorResponse(request, throwable));
+  }
+
+  /**
+   * 没有执行到业务方法(或执行时漏出了异常)的请求返回的错误响应
+   */
+  static HippoResponse errorResponse(HippoRequest request, Throwable throwable) {
+    HippoResponse response = new HippoResponse();
+    response.setRequestId(request.getRequestId());
+    response.setChainIdHigh(request.getChainIdHigh());
+    response.setChainIdLow(request.getChainIdLow());
+    response.setChainOrder(request.getChainOrder());
+    response.setServiceName(request.getServiceName());
+    response.setError(true);
+    response.setThrowable(throwable);
+    return response;
+  }
+}
@@ -1,8 +1,16 @@
 package com.github.hippo.server;
 
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cglib.reflect.FastClass;
+
 /**
  * 缓存了具体SOA实现类/接口
  * 
@@ -12,10 +20,17 @@ import java.util.Map;
 public enum HippoServiceCache {
 
   INSTANCE;
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(HippoServiceCache.class);
+  private static final Class<?>[] EMPTY_TYPES = new Class<?>[0];
+
   private Map<String, Object> implObjectMap = new HashMap<>();
 
   private Map<String, Class<?>> interfaceMap = new HashMap<>();
 
+  // 接口名(simpleName和全限定名) -> 方法名 -> 同名方法(重载)
+  private Map<String, Map<String, HippoServiceMethod[]>> methodMap = new HashMap<>();
+
   Map<String, Object> getImplObjectMap() {
     return implObjectMap;
   }
@@ -24,4 +39,56 @@ public enum HippoServiceCache {
     return interfaceMap;
   }
 
+  /**
+   * 启动时为接口的每个方法生成调用器
+   * 
+   * @param names 接口的simpleName和全限定名
+   * @param interfaceClass @HippoService接口
+   * @param serviceBean 实现类
+   */
+  void registerMethods(String[] names, Class<?> interfaceClass, Object serviceBean) {
+    FastClass fastClass = FastClass.create(serviceBean.getClass());
+    Map<String, List<HippoServiceMethod>> grouped = new HashMap<>();
+    for (Method method : interfaceClass.getMethods()) {
+      try {
+        grouped.computeIfAbsent(method.getName(), k -> new ArrayList<>())
+            .add(new HippoServiceMethod(serviceBean, fastClass, interfaceClass, method));
+      } catch (Exception e) {
+        LOGGER.warn("生成调用器失败,该方法无法调用:" + method, e);
+      }
+    }
+    Map<String, HippoServiceMethod[]> methods = new HashMap<>();
+    grouped.forEach((k, v) -> methods.put(k, v.toArray(new HippoServiceMethod[v.size()])));
+    for (String name : names) {
+      methodMap.put(name, methods);
+    }
+  }
+
+  /**
+   * @param className 接口名
+   * @param methodName 方法名
+   * @return 同名的所有方法,不存在返回null
+   */
+  HippoServiceMethod[] getMethods(String className, String methodName) {
+    Map<String, HippoServiceMethod[]> methods = methodMap.get(className);
+    return methods == null ? null : methods.get(methodName);
+  }
+
+  /**
+   * @return 参数类型完全一致的方法,不存在返回null
+   */
+  HippoServiceMethod getMethod(String className, String methodName, Class<?>[] parameterTypes) {
+    HippoServiceMethod[] methods = getMethods(className, methodName);
+    if (methods == null) {
+      return null;
+    }
+    Class<?>[] types = parameterTypes == null ? EMPTY_TYPES : parameterTypes;
+    for (HippoServiceMethod method : methods) {
+      if (Arrays.equals(method.getParameterTypes(), types)) {
+        return method;
+      }
+    }
+    return null;
+  }
+
 }
@@ -0,0 +1,159 @@
+package com.github.hippo.server;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cglib.reflect.FastClass;
+import org.springframework.cglib.reflect.FastMethod;
+import org.springframework.core.LocalVariableTableParameterNameDiscoverer;
+import org.springframework.core.ParameterNameDiscoverer;
+import org.springframework.core.annotation.AnnotationUtils;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONReader;
+import com.alibaba.fastjson.parser.DefaultJSONParser;
+import com.alibaba.fastjson.parser.ParserConfig;
+import com.github.hippo.annotation.HippoNonBlocking;
+
+/**
+ * 启动时预先生成好的服务方法调用器,请求进来直接invoke,不再每次FastClass.create/getMethod
+ * 
+ * @author sl
+ *
+ */
+final class HippoServiceMethod {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(HippoServiceMethod.class);
+  private static final ParameterNameDiscoverer PARAMETER_NAME_DISCOVERER =
+      new LocalVariableTableParameterNameDiscoverer();
+
+  private final Object serviceBean;
+  // 接口上定义的方法
+  private final Method method;
+  private final Class<?>[] parameterTypes;
+  private final FastMethod fastMethod;
+
+  // API调用用的参数元数据,启动时解析一次
+  private final String[] parameterNames;
+  private final Type[] genericParameterTypes;
+  // 只有一个自定义dto参数时,整个json就是这个参数
+  private final boolean singleDto;
+  // 执行这个方法的舱壁
+  private final HippoServerBulkhead bulkhead;
+  // 大于0表示@HippoNonBlocking方法,在io线程上执行的时间预算
+  private final long inlineBudgetNanos;
+
+  HippoServiceMethod(Object serviceBean, FastClass fastClass, Class<?> interfaceClass,
+      Method method) {
+    this.serviceBean = serviceBean;
+    this.method = method;
+    this.parameterTypes = method.getParameterTypes();
+    this.fastMethod = fastClass.getMethod(method.getName(), parameterTypes);
+    // 参数名从实现类的字节码里取(接口没有LocalVariableTable)
+    this.parameterNames = PARAMETER_NAME_DISCOVERER.getParameterNames(fastMethod.getJavaMethod());
+    this.genericParameterTypes = method.getGenericParameterTypes();
+    this.singleDto = parameterTypes.length == 1 && !isJavaClass(parameterTypes[0]);
+    this.bulkhead = HippoServerExecutor.INSTANCE.resolveBulkhead(interfaceClass,
+        serviceBean.getClass(), fastMethod.getJavaMethod());
+    this.inlineBudgetNanos = HippoInlineWatchdog.INSTANCE.resolveBudgetNanos(
+        AnnotationUtils.findAnnotation(fastMethod.getJavaMethod(), HippoNonBlocking.class));
+    prewarmDeserializers();
+  }
+
+  /**
+   * 提前生成fastjson的反序列化器,第一个请求不用再生成
+   * 
+   * 只影响API调用的第一次耗时:没有默认构造器等fastjson不支持的类型(protostuff可以)跳过,不能影响RPC调用
+   */
+  private void prewarmDeserializers() {
+    for (Type type : genericParameterTypes) {
+      try {
+        ParserConfig.getGlobalInstance().getDeserializer(type);
+      } catch (Exception e) {
+        LOGGER.info("跳过fastjson反序列化器预热,{}的参数类型{}不能用于API调用:{}", method, type,
+            e.getMessage());
+      }
+    }
+  }
+
+  private static boolean isJavaClass(Class<?> clz) {
+    return clz != null && clz.getClassLoader() == null;
+  }
+
+  /**
+   * API调用:把json直接绑定成参数数组
+   * 
+   * 单个dto参数时整个json就是dto;否则json的每个字段按参数名一次遍历绑定成对应类型,多余的字段跳过
+   * 
+   * @param parameters 请求参数,API调用只有一个json字符串
+   * @return 参数数组
+   */
+  Object[] bindApiParameters(Object[] parameters) {
+    if (parameterTypes.length == 0 || parameters == null) {
+      return null;
+    }
+    if (singleDto) {
+      return new Object[] {JSON.parseObject((String) parameters[0], genericParameterTypes[0])};
+    }
+    if (parameterNames == null || parameterNames.length == 0) {
+      return null;
+    }
+    Object[] args = new Object[parameterNames.length];
+    if (parameters.length != 1 || StringUtils.isBlank((String) parameters[0])) {
+      return args;
+    }
+    try (JSONReader reader = new JSONReader(new DefaultJSONParser((String) parameters[0]))) {
+      reader.startObject();
+      while (reader.hasNext()) {
+        int index = indexOf(reader.readString());
+        if (index < 0) {
+          reader.readObject();
+        } else {
+          args[index] = reader.readObject(genericParameterTypes[index]);
+        }
+      }
+      reader.endObject();
+    }
+    return args;
+  }
+
+  private int indexOf(String name) {
+    for (int i = 0; i < parameterNames.length; i++) {
+      if (parameterNames[i].equals(name)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  Object invoke(Object[] args) throws InvocationTargetException {
+    return fastMethod.invoke(serviceBean, args);
+  }
+
+  Method getMethod() {
+    return method;
+  }
+
+  Class<?>[] getParameterTypes() {
+    return parameterTypes;
+  }
+
+  HippoServerBulkhead getBulkhead() {
+    return bulkhead;
+  }
+
+  /**
+   * @return 是否直接在io线程上执行
+   */
+  boolean isNonBlocking() {
+    return inlineBudgetNanos > 0;
+  }
+
+  long getInlineBudgetNanos() {
+    return inlineBudgetNanos;
+  }
+}
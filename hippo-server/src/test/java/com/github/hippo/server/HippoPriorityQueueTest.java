@@ -0,0 +1,147 @@
+package com.github.hippo.server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.github.hippo.bean.HippoRequest;
+import com.github.hippo.chain.HippoCancelToken;
+import com.github.hippo.enums.HippoPriorityEnum;
+
+import junit.framework.TestCase;
+
+/**
+ * 优先级队列:出队顺序,老化,容量和挤掉低优先级请求
+ * 
+ * @author sl
+ *
+ */
+public class HippoPriorityQueueTest extends TestCase {
+
+  private static HippoServerTask task(HippoPriorityEnum priority) {
+    HippoRequest request = new HippoRequest();
+    request.setPriority(priority.getPriority());
+    return new HippoServerTask(request, 0, new HippoCancelToken(false), () -> null,
+        response -> {
+        });
+  }
+
+  public void testHigherPriorityFirst() {
+    HippoPriorityQueue queue = new HippoPriorityQueue(10, 1000);
+    HippoServerTask low = task(HippoPriorityEnum.LOW);
+    HippoServerTask normal = task(HippoPriorityEnum.NORMAL);
+    HippoServerTask high = task(HippoPriorityEnum.HIGH);
+    queue.offer(low);
+    queue.offer(normal);
+    queue.offer(high);
+    assertSame(high, queue.peek());
+    assertSame(high, queue.poll());
+    assertSame(normal, queue.poll());
+    assertSame(low, queue.poll());
+    assertNull(queue.poll());
+  }
+
+  public void testFifoWithinLane() {
+    HippoPriorityQueue queue = new HippoPriorityQueue(10, 1000);
+    HippoServerTask first = task(HippoPriorityEnum.NORMAL);
+    HippoServerTask second = task(HippoPriorityEnum.NORMAL);
+    queue.offer(first);
+    queue.offer(second);
+    assertSame(first, queue.poll());
+    assertSame(second, queue.poll());
+  }
+
+  public void testAgingLetsLowerPriorityRun() throws InterruptedException {
+    HippoPriorityQueue queue = new HippoPriorityQueue(10, 10);
+    HippoServerTask low = task(HippoPriorityEnum.LOW);
+    // LOW比HIGH晚2个aging,排队超过这个时间就能先出队
+    Thread.sleep(40);
+    HippoServerTask high = task(HippoPriorityEnum.HIGH);
+    queue.offer(high);
+    queue.offer(low);
+    assertSame(low, queue.poll());
+    assertSame(high, queue.poll());
+  }
+
+  public void testZeroAgingIsFifo() throws InterruptedException {
+    HippoPriorityQueue queue = new HippoPriorityQueue(10, 0);
+    HippoServerTask low = task(HippoPriorityEnum.LOW);
+    Thread.sleep(2);
+    HippoServerTask high = task(HippoPriorityEnum.HIGH);
+    queue.offer(high);
+    queue.offer(low);
+    assertSame(low, queue.poll());
+    assertSame(high, queue.poll());
+  }
+
+  public void testCapacity() {
+    HippoPriorityQueue queue = new HippoPriorityQueue(2, 1000);
+    assertTrue(queue.offer(task(HippoPriorityEnum.NORMAL)));
+    assertTrue(queue.offer(task(HippoPriorityEnum.HIGH)));
+    assertFalse(queue.offer(task(HippoPriorityEnum.HIGH)));
+    assertEquals(2, queue.size());
+    assertEquals(0, queue.remainingCapacity());
+    queue.poll();
+    assertEquals(1, queue.remainingCapacity());
+    assertTrue(queue.offer(task(HippoPriorityEnum.LOW)));
+  }
+
+  public void testPollLowerTakesNewestOfLowestLane() {
+    HippoPriorityQueue queue = new HippoPriorityQueue(3, 1000);
+    HippoServerTask normal = task(HippoPriorityEnum.NORMAL);
+    HippoServerTask oldLow = task(HippoPriorityEnum.LOW);
+    HippoServerTask newLow = task(HippoPriorityEnum.LOW);
+    queue.offer(normal);
+    queue.offer(oldLow);
+    queue.offer(newLow);
+    // 同优先级不挤
+    assertNull(queue.pollLower(task(HippoPriorityEnum.LOW)));
+    assertSame(newLow, queue.pollLower(task(HippoPriorityEnum.HIGH)));
+    assertSame(oldLow, queue.pollLower(task(HippoPriorityEnum.NORMAL)));
+    assertNull(queue.pollLower(task(HippoPriorityEnum.NORMAL)));
+    assertSame(normal, queue.pollLower(task(HippoPriorityEnum.HIGH)));
+    assertTrue(queue.isEmpty());
+  }
+
+  public void testRemove() {
+    HippoPriorityQueue queue = new HippoPriorityQueue(10, 1000);
+    HippoServerTask normal = task(HippoPriorityEnum.NORMAL);
+    HippoServerTask low = task(HippoPriorityEnum.LOW);
+    queue.offer(normal);
+    queue.offer(low);
+    assertTrue(queue.remove(low));
+    assertFalse(queue.remove(low));
+    assertEquals(1, queue.size());
+    assertSame(normal, queue.poll());
+  }
+
+  public void testDrainToInPriorityOrder() {
+    HippoPriorityQueue queue = new HippoPriorityQueue(10, 1000);
+    HippoServerTask low = task(HippoPriorityEnum.LOW);
+    HippoServerTask high = task(HippoPriorityEnum.HIGH);
+    queue.offer(low);
+    queue.offer(high);
+    List<Runnable> drained = new ArrayList<>();
+    assertEquals(2, queue.drainTo(drained));
+    assertSame(high, drained.get(0));
+    assertSame(low, drained.get(1));
+    assertEquals(0, queue.size());
+  }
+
+  public void testTimedPollWaitsForOffer() throws InterruptedException {
+    HippoPriorityQueue queue = new HippoPriorityQueue(10, 1000);
+    assertNull(queue.poll(10, TimeUnit.MILLISECONDS));
+    HippoServerTask normal = task(HippoPriorityEnum.NORMAL);
+    Thread producer = new Thread(() -> {
+      try {
+        Thread.sleep(20);
+      } catch (InterruptedException e) {
+        return;
+      }
+      queue.offer(normal);
+    });
+    producer.start();
+    assertSame(normal, queue.poll(5, TimeUnit.SECONDS));
+    producer.join();
+  }
+}
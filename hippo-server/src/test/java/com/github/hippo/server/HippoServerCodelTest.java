@@ -0,0 +1,95 @@
+package com.github.hippo.server;
+
+import java.util.concurrent.TimeUnit;
+
+import com.github.hippo.enums.HippoPriorityEnum;
+
+import junit.framework.TestCase;
+
+/**
+ * CoDel:一个interval内最小排队时间超过target才进入过载,过载时只拒绝排队超过2倍target的请求
+ * 
+ * @author sl
+ *
+ */
+public class HippoServerCodelTest extends TestCase {
+
+  private static final long TARGET_MILLIS = 5;
+  private static final long INTERVAL_MILLIS = 50;
+
+  private static long millis(long millis) {
+    return TimeUnit.MILLISECONDS.toNanos(millis);
+  }
+
+  private static void nextInterval() throws InterruptedException {
+    Thread.sleep(INTERVAL_MILLIS + 10);
+  }
+
+  /**
+   * 创建后的第一个interval最小排队时间按0算,不会判断为过载;跳过它,从一个新的interval开始
+   */
+  private static HippoServerCodel newCodel() throws InterruptedException {
+    HippoServerCodel codel = new HippoServerCodel(TARGET_MILLIS, INTERVAL_MILLIS);
+    nextInterval();
+    return codel;
+  }
+
+  public void testShortDelaysNeverRejected() throws InterruptedException {
+    HippoServerCodel codel = newCodel();
+    for (int i = 0; i < 3; i++) {
+      assertFalse(codel.shouldReject(millis(1)));
+      assertFalse(codel.shouldReject(millis(4)));
+      nextInterval();
+    }
+    assertFalse(codel.shouldReject(millis(1)));
+  }
+
+  public void testStandingQueueRejectsLongDelays() throws InterruptedException {
+    HippoServerCodel codel = newCodel();
+    // 这个interval还没有判断结果,不拒绝
+    assertFalse(codel.shouldReject(millis(20)));
+    assertFalse(codel.shouldReject(millis(15)));
+    nextInterval();
+    // 上一个interval的最小排队时间15ms超过target,进入过载
+    assertTrue(codel.shouldReject(millis(20)));
+    // 过载时排队不超过2倍target的照常执行
+    assertFalse(codel.shouldReject(millis(8)));
+  }
+
+  public void testBurstWithinIntervalNotRejected() throws InterruptedException {
+    HippoServerCodel codel = newCodel();
+    codel.shouldReject(millis(50));
+    // 队列排空过一次,最小值低于target
+    codel.shouldReject(0);
+    codel.shouldReject(millis(50));
+    nextInterval();
+    assertFalse(codel.shouldReject(millis(50)));
+  }
+
+  public void testRecoversAfterQueueDrains() throws InterruptedException {
+    HippoServerCodel codel = newCodel();
+    codel.shouldReject(millis(20));
+    nextInterval();
+    assertTrue(codel.shouldReject(millis(20)));
+    codel.shouldReject(millis(1));
+    nextInterval();
+    assertFalse(codel.shouldReject(millis(20)));
+  }
+
+  public void testLanesJudgedSeparately() throws InterruptedException {
+    HippoServerBulkhead bulkhead = new HippoServerBulkhead("codel-test", 1, 10, false,
+        TARGET_MILLIS, INTERVAL_MILLIS, 0);
+    try {
+      nextInterval();
+      // 低优先级积压,高优先级的请求很快就出队
+      bulkhead.shouldShed(HippoPriorityEnum.LOW, millis(30));
+      bulkhead.shouldShed(HippoPriorityEnum.HIGH, millis(1));
+      nextInterval();
+      assertTrue(bulkhead.shouldShed(HippoPriorityEnum.LOW, millis(30)));
+      assertFalse(bulkhead.shouldShed(HippoPriorityEnum.HIGH, millis(30)));
+      assertEquals(1, bulkhead.getShedCount());
+    } finally {
+      bulkhead.shutdown();
+    }
+  }
+}
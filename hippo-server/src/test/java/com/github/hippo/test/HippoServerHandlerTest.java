@@ -10,7 +10,6 @@ import org.slf4j.LoggerFactory;
 
 import com.github.hippo.bean.HippoRequest;
 import com.github.hippo.bean.HippoResponse;
-import com.github.hippo.enums.HippoRequestEnum;
 
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
@@ -30,18 +29,11 @@ public class HippoServerHandlerTest extends SimpleChannelInboundHandler<HippoReq
     Integer i = new Random().nextInt(10000);
     HippoResponse response = new HippoResponse();
     response.setRequestId(request.getRequestId());
-    // client ping
-    if (request.getRequestType() == HippoRequestEnum.PING.getType()) {
-      response.setResult("ping success");
-      response.setRequestId("-99");
-      // HippoChannelMap.get(clientId).writeAndFlush(response);
-    } else {
-      response.setError(true);
-      try {
-        Thread.sleep(3 * 1000);
-      } catch (InterruptedException e) {
-        e.printStackTrace();
-      }
+    response.setError(true);
+    try {
+      Thread.sleep(3 * 1000);
+    } catch (InterruptedException e) {
+      e.printStackTrace();
     }
     System.out.println(new Date().toLocaleString() + ".." + i + ".." + request.getRequestId() + ".."
         + request.getServiceName()+ "..");
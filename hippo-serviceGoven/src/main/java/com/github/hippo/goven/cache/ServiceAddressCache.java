@@ -0,0 +1,164 @@
+package com.github.hippo.goven.cache;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.hippo.govern.ServiceAddressListener;
+
+/**
+ * 服务地址缓存
+ *
+ * 注册中心刷新后由ServiceGovenImpl调用update,有变化时把增量推给监听者并落盘;
+ * 启动时先加载上次落盘的地址,注册中心慢或者挂了也能直接连
+ *
+ * @author wj
+ *
+ */
+public class ServiceAddressCache {
+  private static final Logger LOGGER = LoggerFactory.getLogger(ServiceAddressCache.class);
+
+  private final Map<String, List<String>> addresses = new ConcurrentHashMap<>();
+  private final List<ServiceAddressListener> listeners = new CopyOnWriteArrayList<>();
+  // 为null不落盘
+  private final File snapshotFile;
+
+  /**
+   * @param snapshotFile 快照文件,为null不落盘
+   */
+  public ServiceAddressCache(File snapshotFile) {
+    this.snapshotFile = snapshotFile;
+    load();
+  }
+
+  /**
+   * @param serviceName 注册服务名
+   * @return 缓存的ip:port,没有缓存返回null
+   */
+  public List<String> get(String serviceName) {
+    return addresses.get(serviceName);
+  }
+
+  public Set<String> getServiceNames() {
+    return addresses.keySet();
+  }
+
+  public void addListener(ServiceAddressListener listener) {
+    listeners.add(listener);
+  }
+
+  /**
+   * 用注册中心拿到的最新地址更新缓存
+   *
+   * 最新地址为空时保留上一次的地址(和客户端定时拉取时忽略空列表的处理一致)
+   *
+   * @param serviceName 注册服务名
+   * @param latest 最新的ip:port
+   */
+  public void update(String serviceName, List<String> latest) {
+    if (latest == null || latest.isEmpty()) {
+      if (addresses.containsKey(serviceName)) {
+        LOGGER.warn("[{}]注册中心返回的地址为空,继续使用上一次的地址", serviceName);
+      }
+      return;
+    }
+    List<String> current = Collections.unmodifiableList(new ArrayList<>(latest));
+    List<String> old = addresses.put(serviceName, current);
+    List<String> added = current.stream().filter(a -> old == null || !old.contains(a))
+        .collect(Collectors.toList());
+    List<String> removed = old == null ? Collections.emptyList()
+        : old.stream().filter(a -> !current.contains(a)).collect(Collectors.toList());
+    if (added.isEmpty() && removed.isEmpty()) {
+      return;
+    }
+    LOGGER.info("[{}]服务地址变化,新增:{},下线:{}", serviceName, added, removed);
+    for (ServiceAddressListener listener : listeners) {
+      try {
+        listener.onChange(serviceName, added, removed);
+      } catch (Exception e) {
+        LOGGER.error("ServiceAddressListener error:[" + serviceName + "]", e);
+      }
+    }
+    persist();
+  }
+
+  private void load() {
+    if (snapshotFile == null || !snapshotFile.isFile()) {
+      return;
+    }
+    Properties properties = new Properties();
+    try (InputStream in = new FileInputStream(snapshotFile)) {
+      properties.load(in);
+    } catch (IOException e) {
+      LOGGER.warn("加载服务地址快照失败:" + snapshotFile, e);
+      return;
+    }
+    for (String serviceName : properties.stringPropertyNames()) {
+      List<String> list = Arrays.stream(properties.getProperty(serviceName).split(","))
+          .map(String::trim).filter(StringUtils::isNotBlank).collect(Collectors.toList());
+      if (!list.isEmpty()) {
+        addresses.put(serviceName, Collections.unmodifiableList(list));
+      }
+    }
+    LOGGER.info("加载服务地址快照:{},{}", snapshotFile, addresses);
+  }
+
+  /**
+   * 先在同一目录下写一个唯一的临时文件再原子替换,避免进程中途退出留下半个文件,
+   * 也避免共用目录的多个进程写同一个临时文件
+   */
+  private synchronized void persist() {
+    if (snapshotFile == null) {
+      return;
+    }
+    Properties properties = new Properties();
+    addresses.forEach((k, v) -> properties.setProperty(k, String.join(",", v)));
+    File parent = snapshotFile.getAbsoluteFile().getParentFile();
+    Path tmp = null;
+    try {
+      if (!parent.isDirectory() && !parent.mkdirs()) {
+        throw new IOException("mkdirs failed:" + parent);
+      }
+      tmp = Files.createTempFile(parent.toPath(), snapshotFile.getName() + ".", ".tmp");
+      try (OutputStream out = Files.newOutputStream(tmp)) {
+        properties.store(out, "hippo service addresses");
+      }
+      try {
+        Files.move(tmp, snapshotFile.toPath(), StandardCopyOption.ATOMIC_MOVE,
+            StandardCopyOption.REPLACE_EXISTING);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(tmp, snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      }
+    } catch (IOException e) {
+      LOGGER.warn("保存服务地址快照失败:" + snapshotFile, e);
+    } finally {
+      if (tmp != null) {
+        try {
+          Files.deleteIfExists(tmp);
+        } catch (IOException e) {
+          LOGGER.debug("删除临时文件失败:" + tmp, e);
+        }
+      }
+    }
+  }
+}
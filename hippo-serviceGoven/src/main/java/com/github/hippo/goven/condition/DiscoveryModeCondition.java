@@ -0,0 +1,44 @@
+package com.github.hippo.goven.condition;
+
+import org.springframework.context.annotation.Condition;
+import org.springframework.context.annotation.ConditionContext;
+import org.springframework.core.type.AnnotatedTypeMetadata;
+
+/**
+ * 按hippo.discovery.mode选择服务治理实现,默认eureka
+ * 
+ * 注意:只能读到Environment里的属性(系统属性/环境变量/@PropertySource)
+ * 
+ * @author wj
+ *
+ */
+public abstract class DiscoveryModeCondition implements Condition {
+
+  public static final String MODE_PROPERTY = "hippo.discovery.mode";
+  public static final String EUREKA = "eureka";
+  public static final String STATIC = "static";
+
+  private final String mode;
+
+  protected DiscoveryModeCondition(String mode) {
+    this.mode = mode;
+  }
+
+  @Override
+  public boolean matches(ConditionContext context, AnnotatedTypeMetadata metadata) {
+    return mode.equalsIgnoreCase(
+        context.getEnvironment().getProperty(MODE_PROPERTY, EUREKA).trim());
+  }
+
+  public static class Eureka extends DiscoveryModeCondition {
+    public Eureka() {
+      super(EUREKA);
+    }
+  }
+
+  public static class Static extends DiscoveryModeCondition {
+    public Static() {
+      super(STATIC);
+    }
+  }
+}
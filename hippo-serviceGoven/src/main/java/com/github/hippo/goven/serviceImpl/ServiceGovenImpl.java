@@ -1,27 +1,39 @@
 package com.github.hippo.goven.serviceImpl;
 
+import java.io.File;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Conditional;
 import org.springframework.stereotype.Component;
 
+import com.github.hippo.goven.cache.ServiceAddressCache;
+import com.github.hippo.goven.condition.DiscoveryModeCondition;
 import com.github.hippo.goven.eureka.EurekaClientConfigBean;
 import com.github.hippo.goven.eureka.EurekaInstanceConfigBean;
+import com.github.hippo.govern.ServiceAddressListener;
 import com.github.hippo.govern.ServiceGovern;
+import com.github.hippo.govern.ServiceMetadata;
 import com.github.hippo.govern.utils.ServiceGovernUtil;
 import com.netflix.appinfo.ApplicationInfoManager;
 import com.netflix.appinfo.EurekaInstanceConfig;
 import com.netflix.appinfo.InstanceInfo;
 import com.netflix.appinfo.InstanceInfo.InstanceStatus;
 import com.netflix.appinfo.providers.EurekaConfigBasedInstanceInfoProvider;
+import com.netflix.discovery.CacheRefreshedEvent;
 import com.netflix.discovery.DiscoveryClient;
 
 /**
@@ -31,6 +43,7 @@ import com.netflix.discovery.DiscoveryClient;
  *
  */
 @Component
+@Conditional(DiscoveryModeCondition.Eureka.class)
 public class ServiceGovenImpl implements ServiceGovern {
   private static final Logger LOGGER = LoggerFactory.getLogger(ServiceGovenImpl.class);
 
@@ -54,6 +67,16 @@ public class ServiceGovenImpl implements ServiceGovern {
   private String region;
   @Value("${eureka.client.zone:defaultZone}")
   private String zone;
+  @Value("${hippo.server.hostId:}")
+  private String hostId;
+  @Value("${hippo.server.warmupMillis:0}")
+  private long warmupMillis;
+  @Value("${hippo.discovery.snapshot.enabled:true}")
+  private boolean snapshotEnabled;
+  @Value("${hippo.discovery.snapshot.file:}")
+  private String snapshotFile;
+  @Value("${hippo.discovery.snapshot.app:${spring.application.name:}}")
+  private String snapshotApp;
 
 
   private static ApplicationInfoManager findManager;
@@ -78,21 +101,74 @@ public class ServiceGovenImpl implements ServiceGovern {
     return regiestManager;
   }
 
-  private DiscoveryClient client;
+  private volatile DiscoveryClient client;
+
+  private volatile ServiceAddressCache addressCache;
+
+  // 服务端注册用的client,下线时使用
+  private DiscoveryClient registerClient;
+
+  private AtomicBoolean clientStarting = new AtomicBoolean(false);
 
   @Override
   public String getServiceAddress(String arg0) {
-    try {
-      InstanceInfo instanceInfo = getClient().getNextServerFromEureka(arg0, false);
-      if (instanceInfo != null) {
-        return instanceInfo.getIPAddr() + ":" + instanceInfo.getPort();
+    List<String> serviceAddresses = getServiceAddresses(arg0);
+    if (serviceAddresses == null || serviceAddresses.isEmpty()) {
+      return null;
+    }
+    return serviceAddresses.get(ThreadLocalRandom.current().nextInt(serviceAddresses.size()));
+  }
+
+  @Override
+  public void subscribe(ServiceAddressListener listener) {
+    getAddressCache().addListener(listener);
+  }
+
+  private ServiceAddressCache getAddressCache() {
+    if (addressCache != null) {
+      return addressCache;
+    }
+    synchronized (this) {
+      if (addressCache == null) {
+        File file = null;
+        if (snapshotEnabled) {
+          file = StringUtils.isBlank(snapshotFile) ? defaultSnapshotFile()
+              : new File(snapshotFile.trim());
+        }
+        addressCache = new ServiceAddressCache(file);
+      }
+      return addressCache;
+    }
+  }
+
+  /**
+   * 同一台机器上的多个应用/多套环境不能共用一个快照文件,默认文件名按应用和注册中心地址区分:
+   * ${user.home}/.hippo/hippo-discovery-{应用名}-{应用名+serviceUrl的摘要}.properties,
+   * 没有配置应用名时用工作目录代替
+   */
+  private File defaultSnapshotFile() {
+    String app = StringUtils.isBlank(snapshotApp) ? System.getProperty("user.dir") : snapshotApp;
+    String digest = UUID
+        .nameUUIDFromBytes((app + "|" + serviceUrl).getBytes(StandardCharsets.UTF_8)).toString()
+        .substring(0, 8);
+    String prefix = StringUtils.isBlank(snapshotApp) ? "hippo-discovery"
+        : "hippo-discovery-" + snapshotApp.trim().replaceAll("[^A-Za-z0-9._-]", "_");
+    return new File(System.getProperty("user.home"),
+        ".hippo/" + prefix + "-" + digest + ".properties");
+  }
+
+  /**
+   * 注册中心每次拉取成功后刷新所有已知服务的地址
+   */
+  private void onCacheRefreshed(DiscoveryClient discoveryClient) {
+    ServiceAddressCache cache = getAddressCache();
+    for (String serviceName : cache.getServiceNames()) {
+      try {
+        cache.update(serviceName, fetchServiceAddresses(discoveryClient, serviceName));
+      } catch (Exception e) {
+        LOGGER.error("refresh service addresses error:" + serviceName, e);
       }
-    } catch (Exception e) {
-      shundown();
-      LOGGER.error("can not get an instance of service from euraka server " + arg0, e);
-      throw e;
     }
-    return null;
   }
 
   private DiscoveryClient getClient() {
@@ -114,13 +190,37 @@ public class ServiceGovenImpl implements ServiceGovern {
       eureClientConfigBean.setAvailabilityZones(zones);
       eureClientConfigBean.setServiceUrl(serviceUrls);
 
-      client = new DiscoveryClient(initializeApplicationInfoManager(eureInstanceConfigBean),
-          eureClientConfigBean);
-
+      DiscoveryClient discoveryClient = new DiscoveryClient(
+          initializeApplicationInfoManager(eureInstanceConfigBean), eureClientConfigBean);
+      discoveryClient.registerEventListener(event -> {
+        if (event instanceof CacheRefreshedEvent) {
+          onCacheRefreshed(discoveryClient);
+        }
+      });
+      client = discoveryClient;
+      // 注册监听之前的第一次拉取不会有事件,这里补一次
+      onCacheRefreshed(discoveryClient);
       return client;
     }
   }
 
+  /**
+   * 先标记DOWN再shutdown(shutdown会从注册中心注销)
+   */
+  @Override
+  public void unregister(String serviceName) {
+    synchronized (ServiceGovenImpl.class) {
+      DiscoveryClient current = registerClient;
+      if (current == null) {
+        return;
+      }
+      LOGGER.info("------------正在下线------------" + serviceName);
+      current.getApplicationInfoManager().setInstanceStatus(InstanceStatus.DOWN);
+      current.shutdown();
+      registerClient = null;
+    }
+  }
+
   @Override
   public int register(String arg0) {
     synchronized (ServiceGovenImpl.class) {
@@ -156,6 +256,14 @@ public class ServiceGovenImpl implements ServiceGovern {
       eureInstanceConfigBean.setLeaseRenewalIntervalInSeconds(leaseRenewalIntervalInSeconds);
       eureInstanceConfigBean.setLeaseExpirationDurationInSeconds(leaseExpirationDurationInSeconds);
       eureInstanceConfigBean.setVirtualHostName(eureInstanceConfigBean.getAppname());
+      eureInstanceConfigBean.getMetadataMap().put(ServiceMetadata.START_TIME,
+          String.valueOf(System.currentTimeMillis()));
+      eureInstanceConfigBean.getMetadataMap().put(ServiceMetadata.ZONE, zone);
+      eureInstanceConfigBean.getMetadataMap().put(ServiceMetadata.HOST_ID, resolveHostId());
+      if (warmupMillis > 0) {
+        eureInstanceConfigBean.getMetadataMap().put(ServiceMetadata.WARMUP_MILLIS,
+            String.valueOf(warmupMillis));
+      }
       eureClientConfigBean.setRegisterWithEureka(registerWithEureka);
       eureClientConfigBean.setPreferSameZoneEureka(preferSameZoneEureka);
       Map<String, String> zones = new HashMap<>();
@@ -167,37 +275,80 @@ public class ServiceGovenImpl implements ServiceGovern {
       DiscoveryClient client = new DiscoveryClient(
           initializeRegiestApplicationInfoManager(eureInstanceConfigBean), eureClientConfigBean);
       client.getApplicationInfoManager().setInstanceStatus(InstanceStatus.UP);
+      registerClient = client;
       int nonSecurePort = eureInstanceConfigBean.getNonSecurePort();
       LOGGER.info(arg0 + "------------注册成功------------port:" + nonSecurePort);
       return nonSecurePort;
     }
   }
 
-  @Override
-  public List<String> getServiceAddresses(String serviceName) {
+  /**
+   * 注册到元数据里的主机标识:配置了hippo.server.hostId就用配置的,否则用hostname
+   */
+  private String resolveHostId() {
+    if (StringUtils.isNotBlank(hostId)) {
+      return hostId.trim();
+    }
     try {
-      List<InstanceInfo> instancesByVipAddress =
-          getClient().getInstancesByVipAddress(serviceName, false);
-      return instancesByVipAddress.stream().map(i -> i.getIPAddr() + ":" + i.getPort())
-          .collect(Collectors.toList());
-    } catch (Exception e) {
-      shundown();
-
-      throw e;
+      return InetAddress.getLocalHost().getHostName();
+    } catch (UnknownHostException e) {
+      LOGGER.error("InetAddress.getLocalHost() error", e);
+      return "";
     }
   }
 
-  private void shundown() {
-    if (client == null) {
-      return;
-    }
-    synchronized (ServiceGovenImpl.class) {
+  /**
+   * 优先读缓存(含启动时加载的快照),缓存由注册中心刷新事件更新;
+   * 缓存里没有的服务才同步去注册中心取
+   */
+  @Override
+  public List<String> getServiceAddresses(String serviceName) {
+    ServiceAddressCache cache = getAddressCache();
+    List<String> cached = cache.get(serviceName);
+    if (cached != null) {
       if (client == null) {
-        return;
+        startClientAsync();
       }
-      client.shutdown();
-      client = null;
+      return cached;
+    }
+    List<String> latest = fetchServiceAddresses(getClient(), serviceName);
+    cache.update(serviceName, latest);
+    return latest;
+  }
+
+  @Override
+  public Map<String, String> getServiceMetadata(String serviceName, String serviceAddress) {
+    DiscoveryClient discoveryClient = client;
+    if (discoveryClient == null) {
+      return Collections.emptyMap();
     }
+    return discoveryClient.getInstancesByVipAddress(serviceName, false).stream()
+        .filter(i -> serviceAddress.equals(i.getIPAddr() + ":" + i.getPort())).findFirst()
+        .map(InstanceInfo::getMetadata).orElse(Collections.emptyMap());
+  }
 
+  private List<String> fetchServiceAddresses(DiscoveryClient discoveryClient,
+      String serviceName) {
+    return discoveryClient.getInstancesByVipAddress(serviceName, false).stream()
+        .map(i -> i.getIPAddr() + ":" + i.getPort()).collect(Collectors.toList());
+  }
+
+  /**
+   * 用快照里的地址时,后台建立注册中心连接,之后靠刷新事件更新缓存
+   */
+  private void startClientAsync() {
+    if (!clientStarting.compareAndSet(false, true)) {
+      return;
+    }
+    Thread thread = new Thread(() -> {
+      try {
+        getClient();
+      } catch (Exception e) {
+        LOGGER.error("init eureka client error", e);
+        clientStarting.set(false);
+      }
+    }, "hippo-discovery-init");
+    thread.setDaemon(true);
+    thread.start();
   }
 }
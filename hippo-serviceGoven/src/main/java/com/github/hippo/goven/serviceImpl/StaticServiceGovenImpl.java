@@ -0,0 +1,155 @@
+package com.github.hippo.goven.serviceImpl;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Conditional;
+import org.springframework.stereotype.Component;
+
+import com.github.hippo.goven.cache.ServiceAddressCache;
+import com.github.hippo.goven.condition.DiscoveryModeCondition;
+import com.github.hippo.govern.ServiceAddressListener;
+import com.github.hippo.govern.ServiceGovern;
+import com.github.hippo.govern.utils.ServiceGovernUtil;
+
+/**
+ * 不依赖注册中心的服务治理实现(hippo.discovery.mode=static)
+ *
+ * 服务地址来自静态配置或者本地文件,文件修改后自动生效,适合压测和本地环境
+ *
+ * @author wj
+ *
+ */
+@Component
+@Conditional(DiscoveryModeCondition.Static.class)
+public class StaticServiceGovenImpl implements ServiceGovern, InitializingBean, DisposableBean {
+  private static final Logger LOGGER = LoggerFactory.getLogger(StaticServiceGovenImpl.class);
+
+  /**
+   * 格式:serviceA=127.0.0.1:8080,127.0.0.1:8081;serviceB=127.0.0.1:9090
+   */
+  @Value("${hippo.discovery.static.services:}")
+  private String services;
+  /**
+   * properties格式,serviceName=ip:port,ip:port
+   */
+  @Value("${hippo.discovery.static.file:}")
+  private String file;
+  @Value("${hippo.discovery.static.fileCheckMillis:1000}")
+  private long fileCheckMillis;
+  @Value("${hippo.discovery.static.port:0}")
+  private int port;
+
+  private ServiceAddressCache addressCache = new ServiceAddressCache(null);
+
+  private ScheduledExecutorService watcher;
+
+  private long lastModified = 0;
+
+  @Override
+  public void afterPropertiesSet() throws Exception {
+    if (StringUtils.isNotBlank(services)) {
+      for (String service : services.split(";")) {
+        String[] split = service.split("=", 2);
+        if (split.length == 2 && StringUtils.isNotBlank(split[0])) {
+          addressCache.update(split[0].trim(), parseAddresses(split[1]));
+        }
+      }
+    }
+    if (StringUtils.isNotBlank(file)) {
+      File watchFile = new File(file.trim());
+      loadFile(watchFile);
+      watcher = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "hippo-discovery-file-watcher");
+        thread.setDaemon(true);
+        return thread;
+      });
+      watcher.scheduleWithFixedDelay(() -> loadFile(watchFile), fileCheckMillis, fileCheckMillis,
+          TimeUnit.MILLISECONDS);
+    }
+  }
+
+  @Override
+  public void destroy() throws Exception {
+    if (watcher != null) {
+      watcher.shutdownNow();
+    }
+  }
+
+  private void loadFile(File watchFile) {
+    long modified = watchFile.lastModified();
+    if (modified == 0 || modified == lastModified) {
+      return;
+    }
+    Properties properties = new Properties();
+    try (InputStream in = new FileInputStream(watchFile)) {
+      properties.load(in);
+    } catch (IOException e) {
+      LOGGER.warn("加载服务地址文件失败:" + watchFile, e);
+      return;
+    }
+    lastModified = modified;
+    for (String serviceName : properties.stringPropertyNames()) {
+      addressCache.update(serviceName, parseAddresses(properties.getProperty(serviceName)));
+    }
+  }
+
+  private static List<String> parseAddresses(String addresses) {
+    return Arrays.stream(addresses.split(",")).map(String::trim)
+        .filter(StringUtils::isNotBlank).collect(Collectors.toList());
+  }
+
+  /**
+   * 只决定服务端监听的端口,不会对外注册;端口优先取环境变量PORT,其次hippo.discovery.static.port
+   */
+  @Override
+  public int register(String serviceName) {
+    String envPort = System.getenv("PORT");
+    int registerPort;
+    if (StringUtils.isNotBlank(envPort)) {
+      registerPort = Integer.parseInt(envPort.trim());
+    } else if (port != 0) {
+      registerPort = port;
+    } else {
+      registerPort = ServiceGovernUtil.getAvailablePort();
+    }
+    LOGGER.info(serviceName + "------------静态服务治理,不注册------------port:" + registerPort);
+    return registerPort;
+  }
+
+  @Override
+  public String getServiceAddress(String serviceName) {
+    List<String> serviceAddresses = getServiceAddresses(serviceName);
+    if (serviceAddresses == null || serviceAddresses.isEmpty()) {
+      return null;
+    }
+    return serviceAddresses.get(ThreadLocalRandom.current().nextInt(serviceAddresses.size()));
+  }
+
+  @Override
+  public List<String> getServiceAddresses(String serviceName) {
+    return addressCache.get(serviceName);
+  }
+
+  @Override
+  public void subscribe(ServiceAddressListener listener) {
+    addressCache.addListener(listener);
+  }
+
+}